@@ -0,0 +1,37 @@
+package com.sendmail;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of target/benchmarks.jar: the usual JMH command line, with
+ * the GC profiler always on so every result carries its allocation rate
+ * (gc.alloc.rate.norm = bytes allocated per operation).
+ *
+ *   java -jar target/benchmarks.jar                      all benchmarks
+ *   java -jar target/benchmarks.jar Xlsx -p rows=10000   one class, one size
+ *   java -jar target/benchmarks.jar -lp                  list with parameters
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams()
+                || cmd.shouldListProfilers() || cmd.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+
+        Options options = new OptionsBuilder()
+                .parent(cmd)
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
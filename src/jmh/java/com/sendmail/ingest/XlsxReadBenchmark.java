@@ -0,0 +1,102 @@
+package com.sendmail.ingest;
+
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a recipient workbook of {@code rows} rows the way a job does:
+ * the streaming path (count pass + read pass through XlsxRowReader) and
+ * the in-memory path (sendmail.ingest.streaming=false, XSSFWorkbook DOM).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XlsxReadBenchmark {
+
+    private static final String[] HEADER =
+            {"Flat", "Email", "Wing", "Area", "Amount", "Name", "Bill Link"};
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    private File file;
+
+    @Setup
+    public void setup() throws Exception {
+        file = File.createTempFile("bench-recipients-", ".xlsx");
+
+        try (Workbook wb = new XSSFWorkbook(); FileOutputStream out = new FileOutputStream(file)) {
+            Sheet sheet = wb.createSheet("Members");
+            Row header = sheet.createRow(0);
+            for (int c = 0; c < HEADER.length; c++) header.createCell(c).setCellValue(HEADER[c]);
+
+            for (int i = 1; i <= rows; i++) {
+                Row row = sheet.createRow(i);
+                row.createCell(0).setCellValue("A-" + i);
+                row.createCell(1).setCellValue("member" + i + "@example.com");
+                row.createCell(2).setCellValue("A");
+                row.createCell(3).setCellValue(850 + i % 400);
+                row.createCell(4).setCellValue(2450.5 + i % 100);
+                row.createCell(5).setCellValue("Member " + i);
+                row.createCell(6).setCellValue("https://drive.google.com/file/d/1AbC" + i + "/view?usp=sharing");
+            }
+            wb.write(out);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public int streaming(Blackhole bh) throws Exception {
+        try (RecipientSource reader = new XlsxRowReader(file)) {
+            int total = reader.countDataRows();
+            reader.read((rowNum, cells) -> bh.consume(cells));
+            return total;
+        }
+    }
+
+    @Benchmark
+    public int inMemory(Blackhole bh) throws Exception {
+        DataFormatter formatter = new DataFormatter();
+        try (Workbook wb = new XSSFWorkbook(new FileInputStream(file))) {
+            Sheet sheet = wb.getSheetAt(0);
+            for (int i = 0; i <= sheet.getLastRowNum(); i++) {
+                Row row = sheet.getRow(i);
+                if (row == null) continue;
+                String[] cells = new String[row.getLastCellNum()];
+                for (int c = 0; c < cells.length; c++) {
+                    cells[c] = formatter.formatCellValue(row.getCell(c));
+                }
+                bh.consume(cells);
+            }
+            return sheet.getLastRowNum();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.sendmail.job;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row bookkeeping of a job with {@code rows} rows: every row added as
+ * PROCESSING and then given its outcome (what the pipeline does per row),
+ * and the reads the status endpoints make.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JobStatusBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    private String[] emails;
+    private String[] names;
+    private String[] links;
+    private JobStatus filled;
+
+    @Setup
+    public void setup() {
+        emails = new String[rows + 1];
+        names = new String[rows + 1];
+        links = new String[rows + 1];
+        for (int i = 1; i <= rows; i++) {
+            emails[i] = "member" + i + "@example.com";
+            names[i] = "Member " + i;
+            links[i] = "https://drive.google.com/uc?export=download&id=1AbC" + i;
+        }
+        filled = fill(new JobStatus("bench"));
+    }
+
+    /** A whole job's row updates, one row after another. */
+    @Benchmark
+    public JobStatus updateRows() {
+        return fill(new JobStatus("bench"));
+    }
+
+    @Benchmark
+    public List<JobStatus.RowStatus> allRowsNewestFirst() {
+        return filled.getAllRowsNewestFirst();
+    }
+
+    /** One page of the rows endpoint. */
+    @Benchmark
+    public List<JobStatus.RowStatus> firstPageNewestFirst() {
+        return filled.getRows(0, 100, true);
+    }
+
+    @Benchmark
+    public Object summary() {
+        return filled.summary();
+    }
+
+    private JobStatus fill(JobStatus job) {
+        for (int i = 1; i <= rows; i++) {
+            job.addOrUpdateRow(i, emails[i], names[i], links[i], "PROCESSING");
+            job.updateRowStatus(i, i % 50 == 0
+                    ? "FAILED: Brevo API failed (400): email is not valid"
+                    : "SENT");
+        }
+        return job;
+    }
+}
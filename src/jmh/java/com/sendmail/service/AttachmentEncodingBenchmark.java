@@ -0,0 +1,86 @@
+package com.sendmail.service;
+
+import okio.BufferedSink;
+import okio.Okio;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Attachment base64 per send: streamed from the file by BrevoRequestBody,
+ * written from the attachment cache's in-memory copy, and the one-shot
+ * encodeToString the cache uses to fill that copy. Output goes to a sink
+ * that discards it, as a socket would take it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttachmentEncodingBenchmark {
+
+    @Param({"64", "1024", "8192"})
+    public int attachmentKb;
+
+    private final BrevoPayloadBuilder builder = new BrevoPayloadBuilder("billing@example.com");
+
+    private File file;
+    private BrevoPayloadBuilder.Buffer head;
+    private String cachedBase64;
+
+    @Setup
+    public void setup() throws Exception {
+        byte[] data = new byte[attachmentKb * 1024];
+        new Random(42).nextBytes(data);
+
+        file = File.createTempFile("bench-attachment-", ".pdf");
+        Files.write(file.toPath(), data);
+
+        head = builder.single("a1204@example.com", "Maintenance bill", "<p>Dear member</p>", "bill.pdf");
+        cachedBase64 = Base64.getEncoder().encodeToString(data);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public long streamed() throws Exception {
+        BrevoRequestBody body = new BrevoRequestBody(head, file, null);
+        try (BufferedSink sink = Okio.buffer(Okio.blackhole())) {
+            body.writeTo(sink);
+        }
+        return body.contentLength();
+    }
+
+    @Benchmark
+    public long cached() throws Exception {
+        BrevoRequestBody body = new BrevoRequestBody(head, file, cachedBase64);
+        try (BufferedSink sink = Okio.buffer(Okio.blackhole())) {
+            body.writeTo(sink);
+        }
+        return body.contentLength();
+    }
+
+    @Benchmark
+    public String encodeToString() throws Exception {
+        return Base64.getEncoder().encodeToString(Files.readAllBytes(file.toPath()));
+    }
+}
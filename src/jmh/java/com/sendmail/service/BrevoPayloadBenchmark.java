@@ -0,0 +1,84 @@
+package com.sendmail.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Brevo JSON payload construction: one recipient per call, and a
+ * messageVersions batch of {@code rows} recipients. Bodies carry quotes,
+ * newlines and non-ASCII text so the escaper has work to do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BrevoPayloadBenchmark {
+
+    private static final String SUBJECT = "Society Maintenance bill from Jan. 2026 to Mar. 2026";
+
+    private static final String BODY = body();
+
+    private final BrevoPayloadBuilder builder = new BrevoPayloadBuilder("billing@example.com");
+
+    @Benchmark
+    public int single() throws Exception {
+        BrevoPayloadBuilder.Buffer buf = builder.single("a1204@example.com", SUBJECT, BODY, "bill.pdf");
+        int n = buf.length();
+        builder.release(buf);
+        return n;
+    }
+
+    @Benchmark
+    public int batch(Batch b) throws Exception {
+        BrevoPayloadBuilder.Buffer buf = builder.batch(b.messages, "bill.pdf");
+        int n = buf.length();
+        builder.release(buf);
+        return n;
+    }
+
+    private static String body() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<p>Dear \"Résident\" of flat ₹ A-1204,</p>\n");
+        for (int i = 0; i < 20; i++) {
+            sb.append("<p style=\"margin:0\">Line ").append(i)
+                    .append(": maintenance \\ water \\ parking</p>\n");
+        }
+        return sb.toString();
+    }
+
+    // ================== Inner Class ==================
+
+    @State(Scope.Thread)
+    public static class Batch {
+
+        /** Recipients per batch call. */
+        @Param({"10", "100"})
+        public int rows;
+
+        List<PersonalizedMessage> messages;
+
+        @Setup
+        public void setup() {
+            messages = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                messages.add(new PersonalizedMessage(
+                        "member" + i + "@example.com", SUBJECT, BODY.replace("A-1204", "A-" + i), null));
+            }
+        }
+    }
+}
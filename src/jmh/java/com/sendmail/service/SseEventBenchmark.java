@@ -0,0 +1,62 @@
+package com.sendmail.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sendmail.job.JobStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSE serialization: {@code rows} row updates plus a progress event
+ * coalesced into one frame (JSON per row, then the SSE text). rows=1 is
+ * the cost of a lone update.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SseEventBenchmark {
+
+    /** Row updates pending per flush (sendmail.sse.frame-rows). */
+    @Param({"1", "100", "1000"})
+    public int rows;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private JobEventBus bus;
+    private JobStatus.RowStatus[] updates;
+
+    @Setup
+    public void setup() {
+        bus = new JobEventBus(mapper, 256);
+        updates = new JobStatus.RowStatus[rows];
+        for (int i = 0; i < rows; i++) {
+            updates[i] = new JobStatus.RowStatus(
+                    i + 1,
+                    "member" + i + "@example.com",
+                    "Member \"" + i + "\"",
+                    "https://drive.google.com/uc?export=download&id=1AbC" + i,
+                    i % 50 == 0 ? "FAILED: Brevo API failed (400): email is not valid" : "SENT");
+        }
+    }
+
+    @Benchmark
+    public JobEventBus.Frame frame() {
+        for (JobStatus.RowStatus row : updates) bus.row(row);
+        bus.progress(Map.of("progress", 42));
+        return bus.flush();
+    }
+}
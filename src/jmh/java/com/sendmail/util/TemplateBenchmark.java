@@ -0,0 +1,69 @@
+package com.sendmail.util;
+
+import com.sendmail.service.TemplateService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Per-row template work: EmailTemplateUtil.load (read + parse + render on
+ * every call) against TemplateService (compiled once, rendered per row).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateBenchmark {
+
+    private final TemplateService templates = new TemplateService();
+
+    private Map<String, String> vars;
+    private Function<String, String> lookup;
+
+    @Setup
+    public void setup() throws Exception {
+        vars = Map.of(
+                "name", "Flat A-1204 \"Sharma\"",
+                "email", "a1204@example.com",
+                "driveLink", "https://drive.google.com/uc?export=download&id=1AbCdEfGhIjKlMnOp");
+        lookup = key -> switch (key) {
+            case "name" -> vars.get("name");
+            case "email" -> vars.get("email");
+            case "drivelink" -> vars.get("driveLink");
+            default -> null;
+        };
+        templates.get("email.html");
+        templates.get("subject.txt");
+    }
+
+    /** What the send path did before templates were compiled once. */
+    @Benchmark
+    public String load() throws Exception {
+        return EmailTemplateUtil.load("email.html", vars);
+    }
+
+    @Benchmark
+    public CompiledTemplate compile() throws Exception {
+        return EmailTemplateUtil.compile("email.html");
+    }
+
+    /** Render stage: body and subject for one row. */
+    @Benchmark
+    public String render() throws Exception {
+        templates.render("subject.txt", lookup);
+        return templates.render("email.html", lookup);
+    }
+}
@@ -0,0 +1,325 @@
+package com.sendmail;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Drive attachments cached by file ID, shared by all jobs.
+ *
+ * Disk tier: one file per ID, LRU-trimmed to a byte budget. Entries still
+ * used by a running job are never evicted; when the last job using an entry
+ * ends it becomes evictable (or is deleted right away, see keep-after-job).
+ * Memory tier: base64 payloads of recently sent small files, LRU-trimmed
+ * to its own budget; larger files are always streamed from disk.
+ * Concurrent requests for one ID share a single download.
+ */
+@Component
+public class AttachmentCache {
+
+    @Value("${sendmail.attachments.disk-budget-mb:512}")
+    private long diskBudgetMb;
+
+    @Value("${sendmail.attachments.memory-budget-mb:32}")
+    private long memoryBudgetMb;
+
+    @Value("${sendmail.attachments.memory-max-entry-kb:256}")
+    private long memoryMaxEntryKb;
+
+    @Value("${sendmail.attachments.keep-after-job:false}")
+    private boolean keepAfterJob;
+
+    private File dir;
+
+    private final Map<String, CompletableFuture<Entry>> inflight = new ConcurrentHashMap<>();
+
+    // Guarded by lock (not synchronized, so virtual threads don't pin); access-ordered for LRU
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Entry> byPath = new ConcurrentHashMap<>();
+    private long diskBytes;
+    private long memoryBytes;
+
+    @PostConstruct
+    void init() {
+        dir = new File(System.getProperty("java.io.tmpdir"), "sendmail-attachments");
+        dir.mkdirs();
+
+        // Files left by a previous process are unknown to this one
+        File[] stale = dir.listFiles();
+        if (stale != null) {
+            for (File f : stale) f.delete();
+        }
+    }
+
+    /**
+     * Returns the cached file for a Drive link, downloading it at most once
+     * however many rows and jobs ask for it concurrently. Null if the link
+     * has no Drive file ID.
+     */
+    public File get(String jobId, String driveLink) throws Exception {
+        String fileId = AttachmentDownloader.extractFileId(driveLink);
+        if (fileId == null) return null;
+
+        while (true) {
+            Entry e = reference(jobId, fileId);
+            if (e != null) return e.file;
+
+            CompletableFuture<Entry> mine = new CompletableFuture<>();
+            CompletableFuture<Entry> running = inflight.putIfAbsent(fileId, mine);
+
+            if (running == null) {
+                try {
+                    Entry fresh = new Entry(fileId, AttachmentDownloader.downloadTo(fileId, dir));
+                    install(jobId, fresh);
+                    mine.complete(fresh);
+                    return fresh.file;
+                } catch (Exception ex) {
+                    mine.completeExceptionally(ex);
+                    throw ex;
+                } finally {
+                    inflight.remove(fileId, mine);
+                }
+            }
+
+            try {
+                running.get();
+            } catch (ExecutionException ex) {
+                throw ex.getCause() instanceof Exception c ? c : ex;
+            }
+            // Loop: take our own reference on the installed entry
+        }
+    }
+
+    /**
+     * Base64 of a cached file if it is small enough for the memory tier
+     * (encoded once, then shared by every send). Null for large files and
+     * files not from this cache: those are streamed from disk instead.
+     */
+    public String cachedBase64(File file) throws Exception {
+        Entry e = byPath.get(file.getAbsolutePath());
+        if (e == null || e.size > memoryMaxEntryKb * 1024) return null;
+
+        lock.lock();
+        try {
+            if (e.base64 != null) {
+                memory.get(e.fileId); // touch
+                return e.base64;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        String encoded = Base64.getEncoder().encodeToString(Files.readAllBytes(file.toPath()));
+
+        lock.lock();
+        try {
+            if (e.base64 == null && disk.containsKey(e.fileId)) {
+                e.base64 = encoded;
+                memory.put(e.fileId, e);
+                memoryBytes += encoded.length();
+                trimMemory();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return encoded;
+    }
+
+    /**
+     * Drops the job's references. Entries nobody uses any more lose their
+     * memory copy and are deleted, or kept on disk subject to the budget.
+     */
+    public void releaseJob(String jobId) {
+        List<Entry> unused = new ArrayList<>();
+        List<File> victims;
+
+        lock.lock();
+        try {
+            for (Entry e : disk.values()) {
+                if (e.jobs.remove(jobId) && e.jobs.isEmpty()) unused.add(e);
+            }
+            for (Entry e : unused) {
+                dropMemory(e);
+                if (!keepAfterJob) removeEntry(e);
+            }
+            victims = trimDisk();
+        } finally {
+            lock.unlock();
+        }
+
+        if (!keepAfterJob) {
+            for (Entry e : unused) victims.add(e.file);
+        }
+        delete(victims);
+    }
+
+    /**
+     * Deletes cached files no running job uses and nobody asked for within
+     * maxIdleMs (only relevant with keep-after-job), plus stray partial downloads.
+     */
+    public int reapIdle(long maxIdleMs) {
+        long cutoff = System.currentTimeMillis() - maxIdleMs;
+        List<File> victims = new ArrayList<>();
+
+        lock.lock();
+        try {
+            Iterator<Entry> it = disk.values().iterator();
+            while (it.hasNext()) {
+                Entry e = it.next();
+                if (!e.jobs.isEmpty() || e.lastUsed >= cutoff) continue;
+
+                it.remove();
+                diskBytes -= e.size;
+                dropMemory(e);
+                byPath.remove(e.file.getAbsolutePath());
+                victims.add(e.file);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        File[] parts = dir.listFiles((d, name) -> name.endsWith(".part"));
+        if (parts != null) {
+            for (File f : parts) {
+                if (f.lastModified() < cutoff) victims.add(f);
+            }
+        }
+
+        delete(victims);
+        return victims.size();
+    }
+
+    public Map<String, Object> stats() {
+        lock.lock();
+        try {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("entries", disk.size());
+            m.put("diskBytes", diskBytes);
+            m.put("memoryEntries", memory.size());
+            m.put("memoryBytes", memoryBytes);
+            return m;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ---------------- HELPERS ----------------
+
+    private Entry reference(String jobId, String fileId) {
+        lock.lock();
+        try {
+            Entry e = disk.get(fileId);
+            if (e == null || !e.file.exists()) return null;
+            e.jobs.add(jobId);
+            e.lastUsed = System.currentTimeMillis();
+            return e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void install(String jobId, Entry e) {
+        List<File> victims;
+
+        lock.lock();
+        try {
+            e.jobs.add(jobId);
+
+            Entry old = disk.put(e.fileId, e);
+            if (old != null) {
+                diskBytes -= old.size;
+                dropMemory(old);
+                byPath.remove(old.file.getAbsolutePath());
+            }
+            byPath.put(e.file.getAbsolutePath(), e);
+            diskBytes += e.size;
+            victims = trimDisk();
+        } finally {
+            lock.unlock();
+        }
+
+        delete(victims);
+    }
+
+    /** Evicts unused LRU entries over budget; returns their files to delete. */
+    private List<File> trimDisk() {
+        List<File> victims = new ArrayList<>();
+        long budget = diskBudgetMb * 1024 * 1024;
+        Iterator<Entry> it = disk.values().iterator();
+        while (diskBytes > budget && it.hasNext()) {
+            Entry e = it.next();
+            if (!e.jobs.isEmpty()) continue; // in use by a running job
+
+            it.remove();
+            diskBytes -= e.size;
+            dropMemory(e);
+            byPath.remove(e.file.getAbsolutePath());
+            victims.add(e.file);
+        }
+        return victims;
+    }
+
+    /** File deletes run outside the lock. */
+    private static void delete(List<File> files) {
+        for (File f : files) f.delete();
+    }
+
+    private void trimMemory() {
+        long budget = memoryBudgetMb * 1024 * 1024;
+        Iterator<Entry> it = memory.values().iterator();
+        while (memoryBytes > budget && it.hasNext()) {
+            Entry e = it.next();
+            it.remove();
+            memoryBytes -= e.base64.length();
+            e.base64 = null;
+        }
+    }
+
+    private void dropMemory(Entry e) {
+        if (e.base64 != null && memory.remove(e.fileId) != null) {
+            memoryBytes -= e.base64.length();
+        }
+        e.base64 = null;
+    }
+
+    private void removeEntry(Entry e) {
+        if (disk.remove(e.fileId) != null) {
+            diskBytes -= e.size;
+        }
+        byPath.remove(e.file.getAbsolutePath());
+    }
+
+    // ================== Inner Class ==================
+
+    private static class Entry {
+        final String fileId;
+        final File file;
+        final long size;
+        final Set<String> jobs = ConcurrentHashMap.newKeySet();
+        volatile String base64;
+        volatile long lastUsed = System.currentTimeMillis();
+
+        Entry(String fileId, File file) {
+            this.fileId = fileId;
+            this.file = file;
+            this.size = file.length();
+        }
+    }
+}
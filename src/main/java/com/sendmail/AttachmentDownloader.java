@@ -7,6 +7,7 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 public class AttachmentDownloader {
 
@@ -19,18 +20,39 @@ public class AttachmentDownloader {
             Map.entry("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", ".xlsx")
     );
 
-    public static File download(String driveLink) throws Exception {
+    /** Name prefix of every downloaded attachment file. */
+    public static final String FILE_PREFIX = "JanToMar2026_MaintenancePayment_Bill-";
 
-        if (driveLink == null || driveLink.isBlank()) {
-            return null;
+    // Drive IDs are URL-safe base64; anything else never reaches a file name
+    private static final Pattern FILE_ID = Pattern.compile("[A-Za-z0-9_-]+");
+
+    /**
+     * Downloads a Drive file into {@code dir} under a name derived from its
+     * ID. The file only appears once the download is complete.
+     */
+    public static File downloadTo(String fileId, File dir) throws Exception {
+
+        if (!isValidFileId(fileId)) {
+            throw new IllegalArgumentException("Invalid Drive file ID: " + fileId);
         }
 
-        // Normalize Google Drive link → direct download
-        String fileId = extractFileId(driveLink);
-        if (fileId == null) {
-            return null;
+        HttpURLConnection conn = open(fileId);
+
+        String contentType = conn.getContentType();
+        String extension = EXT_MAP.getOrDefault(contentType, ".pdf"); // safe fallback
+
+        File target = new File(dir, FILE_PREFIX + fileId + extension);
+        File part = new File(dir, target.getName() + ".part");
+
+        try (InputStream in = conn.getInputStream()) {
+            Files.copy(in, part.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
+        Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        return target;
+    }
 
+    private static HttpURLConnection open(String fileId) throws Exception {
         String downloadUrl =
                 "https://drive.google.com/uc?export=download&id=" + fileId;
 
@@ -39,33 +61,40 @@ public class AttachmentDownloader {
         conn.setConnectTimeout(10000);
         conn.setReadTimeout(15000);
         conn.connect();
+        return conn;
+    }
 
-        String contentType = conn.getContentType();
-        String extension = EXT_MAP.getOrDefault(contentType, ".pdf"); // safe fallback
-
-        File temp = File.createTempFile("JanToMar2026_MaintenancePayment_Bill-", extension);
-
-        try (InputStream in = conn.getInputStream()) {
-            Files.copy(in, temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
-        }
+    /**
+     * The Drive file ID of a share link, or null when the link has none.
+     * Rejects an ID with anything other than {@code [A-Za-z0-9_-]} in it,
+     * since it ends up in a cache file name.
+     */
+    public static String extractFileId(String link) {
 
-        return temp;
-    }
+        if (link == null) return null;
 
-    private static String extractFileId(String link) {
+        String id = null;
 
         // Format: /file/d/<ID>/view
         if (link.contains("/file/d/")) {
             int start = link.indexOf("/d/") + 3;
             int end = link.indexOf("/", start);
-            return end > start ? link.substring(start, end) : null;
+            id = end > start ? link.substring(start, end) : null;
+
+        } else if (link.contains("id=")) {
+            // Format: ?id=<ID>
+            int start = link.indexOf("id=") + 3;
+            int end = link.indexOf("&", start);
+            id = end > start ? link.substring(start, end) : link.substring(start);
         }
 
-        // Format: ?id=<ID>
-        if (link.contains("id=")) {
-            return link.substring(link.indexOf("id=") + 3);
+        if (id != null && !isValidFileId(id)) {
+            throw new IllegalArgumentException("Invalid Drive file ID: " + id);
         }
+        return id;
+    }
 
-        return null;
+    public static boolean isValidFileId(String fileId) {
+        return fileId != null && FILE_ID.matcher(fileId).matches();
     }
 }
@@ -1,9 +1,12 @@
 package com.sendmail.config;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
@@ -11,8 +14,48 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 @EnableAsync
 public class AsyncConfig {
 
+    /**
+     * true = jobs and pipeline workers run on virtual threads: a job blocked
+     * on Brevo, Drive or a pause costs no platform thread, and the number of
+     * concurrent jobs is bounded by max-concurrent-jobs instead of a pool.
+     */
+    @Value("${sendmail.executor.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    @Value("${sendmail.executor.max-concurrent-jobs:200}")
+    private int maxConcurrentJobs;
+
+    @Value("${sendmail.sse.dispatch-threads:32}")
+    private int sseDispatchThreads;
+
+    /**
+     * In virtual-thread mode every job gets its thread at once and waits
+     * for one of max-concurrent-jobs permits on that thread. The caller
+     * (e.g. the /send-async request) never blocks, which it would with
+     * SimpleAsyncTaskExecutor's own concurrency limit.
+     */
     @Bean(name = "taskExecutor")
     public Executor taskExecutor() {
+        if (virtualThreads) {
+            Semaphore jobSlots = new Semaphore(maxConcurrentJobs, true);
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("EmailAsync-");
+            executor.setVirtualThreads(true);
+            executor.setTaskDecorator(task -> () -> {
+                try {
+                    jobSlots.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    task.run();
+                } finally {
+                    jobSlots.release();
+                }
+            });
+            return executor;
+        }
+
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(5);
         executor.setMaxPoolSize(10);
@@ -21,4 +64,47 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    /**
+     * Send-pipeline stage workers. No queue: stage workers of a running job
+     * must never wait behind other jobs, so threads are created on demand
+     * and reclaimed when idle.
+     */
+    @Bean(name = "pipelineExecutor")
+    public Executor pipelineExecutor() {
+        if (virtualThreads) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("EmailStage-");
+            executor.setVirtualThreads(true);
+            return executor;
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(0);
+        executor.setMaxPoolSize(Integer.MAX_VALUE);
+        executor.setQueueCapacity(0);
+        executor.setKeepAliveSeconds(60);
+        executor.setThreadNamePrefix("EmailStage-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * SSE dispatchers: one task per subscriber with frames to write.
+     * Always platform threads, since SseEmitter.send synchronizes internally
+     * and would pin a virtual thread's carrier while a client is slow.
+     * Bounded: a subscriber has at most one drain queued or running, so the
+     * queue never holds more than the open streams, and a write stalled past
+     * sendmail.sse.send-timeout-ms drops its stream.
+     */
+    @Bean(name = "sseExecutor")
+    public Executor sseExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(sseDispatchThreads);
+        executor.setMaxPoolSize(sseDispatchThreads);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setKeepAliveSeconds(60);
+        executor.setThreadNamePrefix("SseDispatch-");
+        executor.initialize();
+        return executor;
+    }
 }
@@ -1,7 +1,5 @@
 package com.sendmail.controller;
 
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -9,16 +7,31 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.File;
-import java.nio.file.Files;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPOutputStream;
 
+import com.sendmail.ingest.ColumnMapping;
+import com.sendmail.ingest.SheetPreview;
+import com.sendmail.ingest.SourceFormat;
 import com.sendmail.job.JobStatusStore;
 import com.sendmail.job.JobStatus;
 import com.sendmail.service.EmailAsyncService;
+import com.sendmail.service.EmailService;
+import com.sendmail.service.JobReaper;
+import com.sendmail.service.MailTransport;
 import com.sendmail.service.SseEmitterService;
+import com.sendmail.suppression.SuppressionList;
+import com.sendmail.util.FileDownload;
+import com.sendmail.writeback.CsvReport;
+import com.sendmail.writeback.ExcelWriteBackService;
 
 @RestController
 @RequestMapping("/api/email")
@@ -34,56 +47,103 @@ public class EmailController {
     @Autowired
     private EmailAsyncService emailAsyncService;
 
+    @Autowired
+    private EmailService emailService;
+
     @Autowired
     private JobStatusStore jobStatusStore;
 
     @Autowired
     private SseEmitterService sseEmitterService;
 
+    @Autowired
+    private ExcelWriteBackService writeBack;
+
+    @Autowired
+    private JobReaper jobReaper;
+
+    @Autowired
+    private SuppressionList suppressionList;
+
+    // Rows returned by /preview and /analyze (detection reads SheetPreview.SAMPLE_ROWS)
+    private static final int PREVIEW_ROWS = 10;
+
     // ---------------- SEND ----------------
 
+    /**
+     * Starts a job. Columns (0-based) may be given, e.g. as returned by
+     * /analyze; any left out are detected from the sheet, and one outside
+     * the sheet's columns is a 400. transport picks how the job's mail goes
+     * out (brevo, smtp); the default if omitted.
+     */
     @PostMapping("/send-async")
     public ResponseEntity<Map<String, String>> sendAsync(
-            @RequestParam("file") MultipartFile file) throws Exception {
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(required = false) Integer emailColumn,
+            @RequestParam(required = false) Integer nameColumn,
+            @RequestParam(required = false) Integer linkColumn,
+            @RequestParam(required = false) String transport) throws Exception {
+
+        MailTransport mailTransport;
+        try {
+            mailTransport = emailService.transport(transport);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
 
         String jobId = UUID.randomUUID().toString();
-        jobStatusStore.createJob(jobId);
 
         File tempDir = new File(System.getProperty("java.io.tmpdir"));
         if (!tempDir.exists()) {
             tempDir.mkdirs();
         }
 
-        File temp = new File(tempDir, "upload-" + jobId + ".xlsx");
+        SourceFormat format = SourceFormat.of(file.getOriginalFilename());
+        File temp = new File(tempDir, "upload-" + jobId + format.extension());
         file.transferTo(temp);
 
         System.out.println("Received file: " + file.getOriginalFilename());
         System.out.println("File size: " + file.getSize());
         System.out.println("Temp path: " + temp.getAbsolutePath());
 
+        ColumnMapping columns;
+        try {
+            columns = columns(temp, emailColumn, nameColumn, linkColumn);
+        } catch (IllegalArgumentException e) {
+            temp.delete();
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+
+        jobStatusStore.createJob(jobId);
         jobStatusStore.registerExcel(jobId, temp);
+        jobStatusStore.registerTransport(jobId, mailTransport.name());
+        if (columns != null) jobStatusStore.registerColumns(jobId, columns);
 
         emailAsyncService.processEmailsAsync(temp, jobId);
         
 
-        return ResponseEntity.ok(Map.of("jobId", jobId));
+        return ResponseEntity.ok(Map.of("jobId", jobId, "transport", mailTransport.name()));
     }
 
     // ---------------- SSE ----------------
 
     @GetMapping("/stream/{jobId}")
-    public SseEmitter stream(@PathVariable String jobId) {
-        return sseEmitterService.createEmitter(jobId);
+    public SseEmitter stream(
+            @PathVariable String jobId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return sseEmitterService.createEmitter(jobId, lastEventId);
     }
 
-    // ---------------- PAUSE / RESUME ----------------
+    // ---------------- PAUSE / RESUME / CANCEL ----------------
 
     @PostMapping("/pause/{jobId}")
     public ResponseEntity<?> pauseJob(@PathVariable String jobId) {
         JobStatus job = jobStatusStore.getJob(jobId);
         if (job == null) return ResponseEntity.notFound().build();
 
-        job.setPaused(true);
+        if (!emailAsyncService.pause(jobId)) {
+            return ResponseEntity.status(409).body(job.getState().name());
+        }
         sseEmitterService.sendControl(jobId, "PAUSED");
         return ResponseEntity.ok("PAUSED");
     }
@@ -93,13 +153,39 @@ public class EmailController {
         JobStatus job = jobStatusStore.getJob(jobId);
         if (job == null) return ResponseEntity.notFound().build();
 
-        job.setPaused(false);
+        try {
+            if (!emailAsyncService.resume(jobId)) {
+                return ResponseEntity.status(409).body(job.getState().name());
+            }
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(503).body("Executor busy, job still PAUSED; retry");
+        }
         sseEmitterService.sendControl(jobId, "RESUMED");
         return ResponseEntity.ok("RESUMED");
     }
 
+    @PostMapping("/cancel/{jobId}")
+    public ResponseEntity<?> cancelJob(@PathVariable String jobId) {
+        JobStatus job = jobStatusStore.getJob(jobId);
+        if (job == null) return ResponseEntity.notFound().build();
+
+        try {
+            if (!emailAsyncService.cancel(jobId)) {
+                return ResponseEntity.status(409).body(job.getState().name());
+            }
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(503).body("Executor busy, job CANCELLING; retry the cancel");
+        }
+        sseEmitterService.sendControl(jobId, "CANCELLING");
+        return ResponseEntity.ok("CANCELLING");
+    }
+
     // ---------------- STATUS ----------------
 
+    /**
+     * Job state, progress and counts; constant size whatever the job size.
+     * Rows are paged through /rows/{jobId}?offset&limit.
+     */
     @GetMapping("/status/{jobId}")
     public ResponseEntity<JobStatus> getStatus(@PathVariable String jobId) {
         JobStatus js = jobStatusStore.getJob(jobId);
@@ -107,100 +193,300 @@ public class EmailController {
         return ResponseEntity.ok(js);
     }
 
+    /**
+     * Counts, failure breakdown and latency percentiles; constant time
+     * whatever the job size.
+     */
+    @GetMapping("/summary/{jobId}")
+    public ResponseEntity<Map<String, Object>> getSummary(@PathVariable String jobId) {
+        Map<String, Object> summary = jobStatusStore.getSummary(jobId);
+        if (summary == null) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok(summary);
+    }
+
+    /**
+     * One page of rows; order=newest (default) or order=row for sheet order.
+     */
+    @GetMapping("/rows/{jobId}")
+    public ResponseEntity<Map<String, Object>> getRows(
+            @PathVariable String jobId,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(defaultValue = "newest") String order) {
+
+        JobStatus js = jobStatusStore.getJob(jobId);
+        if (js == null) return ResponseEntity.notFound().build();
+
+        int pageSize = Math.max(0, Math.min(limit, 1000));
+        return ResponseEntity.ok(Map.of(
+                "total", js.getRowCount(),
+                "offset", offset,
+                "rows", js.getRows(offset, pageSize, !"row".equalsIgnoreCase(order))
+        ));
+    }
+
+    // ---------------- RATE LIMIT ----------------
+
+    /** Each transport's send rate limiter, by transport name. */
+    @GetMapping("/rate-limit")
+    public Map<String, Object> rateLimit() {
+        return emailService.rateLimits();
+    }
+
+    // ---------------- TRANSPORTS ----------------
+
+    /** Available transports, the default one, and connection pool figures. */
+    @GetMapping("/transports")
+    public Map<String, Object> transports() {
+        return emailService.stats();
+    }
+
+    // ---------------- STORAGE ----------------
+
+    /** Heap, job store, archive, attachment cache and upload usage. */
+    @GetMapping("/storage")
+    public Map<String, Object> storage() {
+        return jobReaper.stats();
+    }
+
+    // ---------------- SUPPRESSION ----------------
+
+    @GetMapping("/suppression")
+    public Map<String, Object> suppressionStats() {
+        return suppressionList.stats();
+    }
+
+    @PostMapping("/suppression")
+    public ResponseEntity<?> suppress(
+            @RequestParam String email,
+            @RequestParam(defaultValue = "Added manually") String reason) throws Exception {
+
+        if (!ColumnMapping.isEmail(email.trim())) {
+            return ResponseEntity.badRequest().body("Not an email address: " + email);
+        }
+        return ResponseEntity.ok(Map.of("email", email, "added", suppressionList.add(email, reason)));
+    }
+
+    @DeleteMapping("/suppression")
+    public Map<String, Object> unsuppress(@RequestParam String email) throws Exception {
+        return Map.of("email", email, "removed", suppressionList.remove(email));
+    }
+
+    /** Adds every address of an uploaded list (xlsx, csv or ndjson). */
+    @PostMapping("/suppression/import")
+    public Map<String, Object> importSuppression(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(defaultValue = "Imported") String reason) throws Exception {
+
+        File temp = File.createTempFile("suppression-", SourceFormat.of(file.getOriginalFilename()).extension());
+        try {
+            file.transferTo(temp);
+            int added = suppressionList.importFrom(temp, reason);
+            return Map.of("imported", added, "stats", suppressionList.stats());
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /** Suppressed addresses as CSV (Email, Reason, SuppressedAt), streamed. */
+    @GetMapping("/suppression/export")
+    public ResponseEntity<StreamingResponseBody> exportSuppression() {
+        return ResponseEntity.ok()
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=suppression.csv")
+                .body(suppressionList::exportTo);
+    }
+
     // ---------------- REPORT ----------------
 
+    /**
+     * CSV of every row, streamed from the row table as it is written.
+     * Gzipped on the wire when the client accepts it.
+     */
     @GetMapping("/report/{jobId}")
-    public ResponseEntity<byte[]> downloadReport(@PathVariable String jobId) {
+    public ResponseEntity<StreamingResponseBody> downloadReport(
+            @PathVariable String jobId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
 
         JobStatus job = jobStatusStore.getJob(jobId);
         if (job == null) {
             return ResponseEntity.status(404)
-                    .body(("Job not found: " + jobId)
-                            .getBytes(StandardCharsets.UTF_8));
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .body(out -> out.write(("Job not found: " + jobId)
+                            .getBytes(StandardCharsets.UTF_8)));
         }
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("Row,Email,Status\n");
-
-        for (JobStatus.RowStatus r : job.getRowStatusList()) {
-            sb.append(r.getRow()).append(",")
-              .append('"').append(r.getEmail()).append('"').append(",")
-              .append('"').append(r.getStatus()).append('"')
-              .append("\n");
-        }
-
-        byte[] csv = sb.toString().getBytes(StandardCharsets.UTF_8);
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
 
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(new MediaType("text", "csv", StandardCharsets.UTF_8));
         headers.set(HttpHeaders.CONTENT_DISPOSITION,
                 "attachment; filename=report-" + jobId + ".csv");
-
-        return ResponseEntity.ok().headers(headers).body(csv);
+        headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+
+        return ResponseEntity.ok().headers(headers).body(out -> {
+            if (gzip) {
+                GZIPOutputStream zip = new GZIPOutputStream(out, 16 * 1024);
+                CsvReport.write(job, zip);
+                zip.finish();
+            } else {
+                CsvReport.write(job, out);
+            }
+        });
     }
 
     // ---------------- PREVIEW ----------------
 
+    /**
+     * First rows as they would be sent, using the detected columns.
+     * Only the rows shown are parsed, however long the sheet.
+     */
     @PostMapping("/preview")
     public List<Map<String, String>> previewExcel(
             @RequestParam("file") MultipartFile file) throws Exception {
 
         List<Map<String, String>> preview = new ArrayList<>();
 
-        try (Workbook workbook = new XSSFWorkbook(file.getInputStream())) {
-            Sheet sheet = workbook.getSheetAt(0);
-
-            int count = 0;
-            for (Row row : sheet) {
-                if (row.getRowNum() == 0) continue;
-                if (count >= 10) break;
+        File temp = File.createTempFile("preview-", SourceFormat.of(file.getOriginalFilename()).extension());
+        try {
+            file.transferTo(temp);
+            SheetPreview sheet = SheetPreview.read(temp, false);
+            ColumnMapping columns = sheet.getMapping();
 
-                Cell emailCell = row.getCell(0);
-                if (emailCell == null) continue;
+            for (int i = 0; i < Math.min(PREVIEW_ROWS, sheet.getSample().size()); i++) {
+                String[] cells = sheet.getSample().get(i);
+                String email = cell(cells, columns.email());
+                if (email.isEmpty()) continue;
 
                 preview.add(Map.of(
-                        "row", String.valueOf(row.getRowNum()),
-                        "email", emailCell.getStringCellValue()
+                        "row", String.valueOf(sheet.getSampleRows().get(i)),
+                        "email", email,
+                        "name", cell(cells, columns.name()),
+                        "driveLink", cell(cells, columns.link())
                 ));
-                count++;
             }
+        } finally {
+            temp.delete();
         }
         return preview;
     }
 
-    // ---------------- RETRY ALL (SAFE PLACEHOLDER) ----------------
+    /**
+     * Detected columns, header and first rows of a sheet. With stats=true
+     * the same single pass reads on to the end and adds row, blank row,
+     * missing / invalid / duplicate address counts.
+     */
+    @PostMapping("/analyze")
+    public Map<String, Object> analyzeExcel(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(defaultValue = "false") boolean stats) throws Exception {
+
+        File temp = File.createTempFile("preview-", SourceFormat.of(file.getOriginalFilename()).extension());
+        try {
+            file.transferTo(temp);
+            SheetPreview sheet = SheetPreview.read(temp, stats);
+            ColumnMapping columns = sheet.getMapping();
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("columns", Map.of(
+                    "email", columns.email(),
+                    "name", columns.name(),
+                    "link", columns.link()
+            ));
+            result.put("header", sheet.getHeader());
+            List<String[]> sample = sheet.getSample();
+            result.put("sample", sample.subList(0, Math.min(PREVIEW_ROWS, sample.size())));
+            if (stats) result.put("stats", sheet.getStats());
+            return result;
+        } finally {
+            temp.delete();
+        }
+    }
+
+    // ---------------- RETRY ALL ----------------
 
+    /**
+     * Re-sends the failed rows of a finished job within the same job
+     * (same status, same SSE stream). 409 while the job is still running.
+     */
     @PostMapping("/retry-all/{jobId}")
     public ResponseEntity<?> retryAll(@PathVariable String jobId) {
-        return ResponseEntity.ok("RETRY_ALL_NOT_IMPLEMENTED_YET");
+        JobStatus job = jobStatusStore.getJob(jobId);
+        if (job == null) return ResponseEntity.notFound().build();
+
+        int queued = emailAsyncService.retryFailed(jobId);
+        if (queued < 0) {
+            return ResponseEntity.status(409).body(job.getState().name());
+        }
+        return ResponseEntity.ok(Map.of("jobId", jobId, "retrying", queued));
     }
 
-    //download
+    /**
+     * Result file, in the upload's format. Served from disk without
+     * reading it into memory; supports ETag revalidation and byte ranges
+     * (resumable downloads). While the job runs, each download is its own
+     * snapshot, deleted once sent.
+     */
     @GetMapping("/download/{jobId}")
-    public ResponseEntity<byte[]> downloadExcel(@PathVariable String jobId)
-            throws Exception {
-
-        File excel = jobStatusStore.getExcel(jobId);
-        if (excel == null || !excel.exists()) {
-            return ResponseEntity.notFound().build();
+    public void downloadExcel(@PathVariable String jobId,
+                              HttpServletRequest request,
+                              HttpServletResponse response) throws Exception {
+
+        ExcelWriteBackService.Download result = writeBack.download(jobId);
+        if (result == null || !result.file().exists()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
 
-        byte[] data = Files.readAllBytes(excel.toPath());
+        SourceFormat format = SourceFormat.of(result.file().getName());
+        MediaType type = MediaType.parseMediaType(format.contentType());
+        String filename = "email-report-" + jobId + format.extension();
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(
-            MediaType.parseMediaType(
-                "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"
-            )
-        );
-        headers.setContentDispositionFormData(
-            "attachment",
-            "email-report-" + jobId + ".xlsx"
+        if (!result.temporary()) {
+            FileDownload.serve(result.file(), type, filename, request, response);
+            return;
+        }
+        try {
+            FileDownload.serveTemporary(result.file(), type, filename, request, response);
+        } finally {
+            result.file().delete();
+        }
+    }
+
+    // ---------------- HELPERS ----------------
+
+    /**
+     * Columns given with the upload, the rest detected the way the job
+     * itself would; null if none given. IllegalArgumentException if a
+     * given column is not one of the sheet's.
+     */
+    private ColumnMapping columns(File sheet, Integer email, Integer name, Integer link) throws Exception {
+        if (email == null && name == null && link == null) return null;
+
+        SheetPreview preview = SheetPreview.read(sheet, false);
+        int width = preview.getWidth();
+        checkColumn("emailColumn", email, width);
+        checkColumn("nameColumn", name, width);
+        checkColumn("linkColumn", link, width);
+
+        ColumnMapping detected = preview.getMapping();
+        return new ColumnMapping(
+                email != null ? email : detected.email(),
+                name != null ? name : detected.name(),
+                link != null ? link : detected.link()
         );
+    }
 
-        return ResponseEntity.ok()
-                .headers(headers)
-                .body(data);
+    private static void checkColumn(String param, Integer col, int width) {
+        if (col != null && (col < 0 || col >= width)) {
+            throw new IllegalArgumentException(
+                    param + " " + col + " is outside the sheet's columns 0.." + (width - 1));
+        }
     }
 
+    private static String cell(String[] cells, int col) {
+        String v = col >= 0 && col < cells.length ? cells[col] : null;
+        return v != null ? v : "";
+    }
 }
@@ -0,0 +1,99 @@
+package com.sendmail.ingest;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Which sheet columns hold the recipient's email, name and attachment
+ * link (0-based; -1 if the sheet has no such column).
+ */
+public record ColumnMapping(int email, int name, int link) {
+
+    /** The layout the sender always assumed: B = email, F = flat no, G = link. */
+    public static final ColumnMapping DEFAULT = new ColumnMapping(1, 5, 6);
+
+    static final Pattern EMAIL = Pattern.compile("^[^@\\s]+@[^@\\s]+\\.[^@\\s]+$");
+
+    private static final String[] EMAIL_HEADERS = {"email", "e-mail", "mail"};
+    private static final String[] NAME_HEADERS = {"name", "flat", "owner", "member", "recipient"};
+    private static final String[] LINK_HEADERS = {"link", "attachment", "drive", "url", "file", "bill"};
+
+    /**
+     * Detects the columns from the header text, checked against the sample
+     * rows, falling back to the values themselves (addresses, http links).
+     * Columns that cannot be told apart keep their DEFAULT position.
+     */
+    public static ColumnMapping detect(String[] header, List<String[]> sample) {
+        String[] h = header != null ? header : new String[0];
+
+        int email = byHeader(h, EMAIL_HEADERS, -1, -1);
+        if (email < 0 || share(sample, email, true) < 0.5) {
+            int byData = bestColumn(sample, true);
+            if (byData >= 0 || email < 0) email = byData;
+        }
+
+        int link = byHeader(h, LINK_HEADERS, email, -1);
+        if (link < 0) link = bestColumn(sample, false);
+
+        int name = byHeader(h, NAME_HEADERS, email, link);
+
+        return new ColumnMapping(
+                email >= 0 ? email : DEFAULT.email,
+                name >= 0 ? name : free(DEFAULT.name, email, link),
+                link >= 0 ? link : free(DEFAULT.link, email, name)
+        );
+    }
+
+    /** Whether a value looks like a single email address. */
+    public static boolean isEmail(String value) {
+        return value != null && EMAIL.matcher(value).matches();
+    }
+
+    // ---------------- HELPERS ----------------
+
+    /** First column whose header contains a keyword, earlier keywords first. */
+    private static int byHeader(String[] header, String[] keywords, int skipA, int skipB) {
+        for (String keyword : keywords) {
+            for (int c = 0; c < header.length; c++) {
+                if (c == skipA || c == skipB || header[c] == null) continue;
+                if (header[c].toLowerCase(Locale.ROOT).contains(keyword)) return c;
+            }
+        }
+        return -1;
+    }
+
+    /** Column where most non-blank sample values are addresses (or links), or -1. */
+    private static int bestColumn(List<String[]> sample, boolean emails) {
+        int width = 0;
+        for (String[] row : sample) width = Math.max(width, row.length);
+
+        int best = -1;
+        double bestShare = 0.5;
+        for (int c = 0; c < width; c++) {
+            double s = share(sample, c, emails);
+            if (s > bestShare) {
+                best = c;
+                bestShare = s;
+            }
+        }
+        return best;
+    }
+
+    private static double share(List<String[]> sample, int col, boolean emails) {
+        if (col < 0 || sample.isEmpty()) return 1; // nothing to contradict the header
+        int filled = 0;
+        int matching = 0;
+        for (String[] row : sample) {
+            String v = col < row.length ? row[col] : "";
+            if (v == null || v.isEmpty()) continue;
+            filled++;
+            if (emails ? isEmail(v) : v.regionMatches(true, 0, "http", 0, 4)) matching++;
+        }
+        return filled == 0 ? 0 : (double) matching / filled;
+    }
+
+    private static int free(int col, int takenA, int takenB) {
+        return col == takenA || col == takenB ? -1 : col;
+    }
+}
@@ -0,0 +1,190 @@
+package com.sendmail.ingest;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streams an RFC 4180 CSV file (comma separated, UTF-8, optional BOM).
+ *
+ * The file is read through one reusable buffer and split on bytes: the
+ * delimiters are ASCII, so they never occur inside a multi-byte UTF-8
+ * character and nothing is decoded except the fields themselves. Quoted
+ * fields may hold commas, doubled quotes and line breaks. Counting rows
+ * allocates nothing per row.
+ */
+public class CsvRowReader implements RecipientSource {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String[] NO_CELLS = new String[0];
+
+    // Parser states
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3; // a quote inside quotes: escape or closing quote
+
+    private final FileChannel channel;
+
+    public CsvRowReader(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    @Override
+    public void read(RowHandler handler) throws Exception {
+        parse(true, handler);
+    }
+
+    /** Lines below the header, extrapolated from the start of the file. */
+    @Override
+    public int estimatedDataRows() throws IOException {
+        int lines = LineSample.estimate(channel);
+        return lines < 0 ? -1 : Math.max(0, lines - 1);
+    }
+
+    @Override
+    public int countDataRows() throws Exception {
+        int[] count = {0};
+        parse(false, (rowNum, cells) -> {
+            if (rowNum > 0) count[0]++;
+        });
+        return count[0];
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // ---------------- PARSER ----------------
+
+    private void parse(boolean withCells, RowHandler handler) throws Exception {
+        channel.position(0);
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[] bytes = buf.array();
+        Record record = new Record(withCells);
+
+        int state = FIELD_START;
+        int rowNum = 0;
+        boolean atStart = true;
+
+        while (channel.read(buf) >= 0) {
+            buf.flip();
+            if (atStart) {
+                skipBom(buf);
+                atStart = false;
+            }
+
+            for (int i = buf.position(), end = buf.limit(); i < end; i++) {
+                byte b = bytes[i];
+
+                if (state == QUOTED) {
+                    if (b == '"') {
+                        state = QUOTE_IN_QUOTED;
+                    } else {
+                        record.append(b);
+                    }
+                    continue;
+                }
+                if (state == QUOTE_IN_QUOTED) {
+                    if (b == '"') {
+                        record.append(b);
+                        state = QUOTED;
+                        continue;
+                    }
+                    state = UNQUOTED; // field closed; anything up to the comma is kept
+                }
+
+                if (b == ',') {
+                    record.endField();
+                    state = FIELD_START;
+                } else if (b == '\n') {
+                    record.endField();
+                    if (!record.emit(rowNum++, handler)) return;
+                    state = FIELD_START;
+                } else if (b == '\r') {
+                    // line ends are \n or \r\n
+                } else if (b == '"' && state == FIELD_START) {
+                    state = QUOTED;
+                } else {
+                    record.append(b);
+                    state = UNQUOTED;
+                }
+            }
+            buf.clear();
+        }
+
+        // Last line without a line break
+        if (record.pending() || state != FIELD_START) {
+            record.endField();
+            record.emit(rowNum, handler);
+        }
+    }
+
+    private static void skipBom(ByteBuffer buf) {
+        if (buf.remaining() >= 3 && buf.get(0) == (byte) 0xEF
+                && buf.get(1) == (byte) 0xBB && buf.get(2) == (byte) 0xBF) {
+            buf.position(3);
+        }
+    }
+
+    // ================== Inner Class ==================
+
+    /** The record being parsed; its buffers are reused for every row. */
+    private static final class Record {
+        private final boolean withCells;
+        private final List<String> cells = new ArrayList<>();
+        private byte[] field = new byte[256];
+        private int length;
+        private int fields;
+        private boolean hasData;
+
+        Record(boolean withCells) {
+            this.withCells = withCells;
+        }
+
+        void append(byte b) {
+            if (b != ' ' && b != '\t') hasData = true;
+            if (!withCells) return;
+            if (length == field.length) field = Arrays.copyOf(field, length * 2);
+            field[length++] = b;
+        }
+
+        void endField() {
+            fields++;
+            if (!withCells) return;
+            int start = 0;
+            int end = length;
+            while (start < end && (field[start] & 0xFF) <= ' ') start++;
+            while (end > start && (field[end - 1] & 0xFF) <= ' ') end--;
+            cells.add(start == end ? "" : new String(field, start, end - start, StandardCharsets.UTF_8));
+            length = 0;
+        }
+
+        boolean pending() {
+            return fields > 0 || length > 0 || hasData;
+        }
+
+        /** Hands a non-blank record over; false if the handler stopped the read. */
+        boolean emit(int rowNum, RowHandler handler) throws Exception {
+            try {
+                if (hasData) handler.onRow(rowNum, withCells ? cells.toArray(NO_CELLS) : NO_CELLS);
+            } catch (Exception e) {
+                if (e == STOP) return false;
+                throw e;
+            } finally {
+                cells.clear();
+                length = 0;
+                fields = 0;
+                hasData = false;
+            }
+            return true;
+        }
+    }
+}
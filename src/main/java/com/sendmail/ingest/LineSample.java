@@ -0,0 +1,41 @@
+package com.sendmail.ingest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Line count of a text file extrapolated from its first 64 KB (exact when
+ * the file is smaller). For progress estimates only: quoted line breaks
+ * and uneven line lengths skew it.
+ */
+final class LineSample {
+
+    private static final int SAMPLE_BYTES = 64 * 1024;
+
+    private LineSample() {
+    }
+
+    /** Estimated lines, or -1 if the sample holds no line break. */
+    static int estimate(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min(size, SAMPLE_BYTES));
+        // Positional reads leave the channel's own position alone
+        int n;
+        do {
+            n = channel.read(buf, buf.position());
+        } while (n > 0 && buf.hasRemaining());
+
+        int sampled = buf.position();
+        int lines = 0;
+        for (int i = 0; i < sampled; i++) {
+            if (buf.get(i) == '\n') lines++;
+        }
+
+        if (sampled == size) {
+            return sampled > 0 && buf.get(sampled - 1) != '\n' ? lines + 1 : lines;
+        }
+        if (lines == 0) return -1;
+        return (int) Math.min(Integer.MAX_VALUE, lines * size / sampled);
+    }
+}
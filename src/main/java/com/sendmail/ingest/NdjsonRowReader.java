@@ -0,0 +1,120 @@
+package com.sendmail.ingest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams a newline-delimited JSON file, one object per recipient, with
+ * Jackson's token parser: no tree is built and field names are
+ * canonicalised, so a row costs its values and one cell array.
+ *
+ * The keys of the first object become the header; later keys that are
+ * not in it are ignored. Nested objects and arrays read as empty cells.
+ * Row n is the n-th value in the file.
+ */
+public class NdjsonRowReader implements RecipientSource {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final File file;
+
+    public NdjsonRowReader(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public void read(RowHandler handler) throws Exception {
+        try (JsonParser p = JSON.createParser(file)) {
+            Map<String, Integer> columns = null;
+            int width = 0;
+            int rowNum = 0;
+
+            JsonToken t;
+            while ((t = p.nextToken()) != null) {
+                rowNum++;
+                if (t != JsonToken.START_OBJECT) {
+                    p.skipChildren(); // not a recipient, keeps its row number
+                    continue;
+                }
+
+                String[] cells;
+                if (columns == null) {
+                    List<String> header = new ArrayList<>();
+                    List<String> values = new ArrayList<>();
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        header.add(p.currentName());
+                        values.add(value(p, p.nextToken()));
+                    }
+                    columns = new HashMap<>();
+                    for (int c = 0; c < header.size(); c++) columns.putIfAbsent(header.get(c), c);
+                    width = header.size();
+                    if (!emit(handler, 0, header.toArray(new String[0]))) return;
+                    cells = values.toArray(new String[0]);
+                } else {
+                    cells = new String[width];
+                    Arrays.fill(cells, "");
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        Integer c = columns.get(p.currentName());
+                        String v = value(p, p.nextToken());
+                        if (c != null) cells[c] = v;
+                    }
+                }
+
+                if (hasData(cells) && !emit(handler, rowNum, cells)) return;
+            }
+        }
+    }
+
+    /** Lines of the file (one object each), extrapolated from its start. */
+    @Override
+    public int estimatedDataRows() throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return LineSample.estimate(channel);
+        }
+    }
+
+    @Override
+    public void close() {
+        // Each read opens and closes its own parser
+    }
+
+    // ---------------- HELPERS ----------------
+
+    private static String value(JsonParser p, JsonToken t) throws IOException {
+        if (t == JsonToken.START_OBJECT || t == JsonToken.START_ARRAY) {
+            p.skipChildren();
+            return "";
+        }
+        if (t == JsonToken.VALUE_NULL) return "";
+        return p.getText().trim();
+    }
+
+    private static boolean hasData(String[] cells) {
+        for (String c : cells) {
+            if (!c.isEmpty()) return true;
+        }
+        return false;
+    }
+
+    /** False if the handler stopped the read. */
+    private static boolean emit(RowHandler handler, int rowNum, String[] cells) throws Exception {
+        try {
+            handler.onRow(rowNum, cells);
+            return true;
+        } catch (Exception e) {
+            if (e == STOP) return false;
+            throw e;
+        }
+    }
+}
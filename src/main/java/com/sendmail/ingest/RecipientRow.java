@@ -0,0 +1,15 @@
+package com.sendmail.ingest;
+
+/**
+ * One recipient parsed from the uploaded sheet.
+ * Row is the 0-based sheet row index (header = 0); cells holds every
+ * column of the row as text so any column can feed a template variable.
+ */
+public record RecipientRow(
+        int row,
+        String email,
+        String name,
+        String driveLink,
+        String[] cells
+) {
+}
@@ -0,0 +1,65 @@
+package com.sendmail.ingest;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A recipient list read row by row: the header as row 0, then every
+ * non-blank data row with its position in the file (blank rows keep
+ * their number, so the result file can be matched up row for row).
+ */
+public interface RecipientSource extends AutoCloseable {
+
+    @FunctionalInterface
+    interface RowHandler {
+        void onRow(int rowNum, String[] cells) throws Exception;
+    }
+
+    /** Thrown by a handler to end the read early; read() then returns normally. */
+    Exception STOP = new Stop();
+
+    /** Calls the handler for the header and every non-blank row, until it throws {@link #STOP}. */
+    void read(RowHandler handler) throws Exception;
+
+    /**
+     * Data rows as far as the file tells without being read (e.g. a sheet's
+     * dimension, blank rows included), or -1 if it does not. A guide for
+     * progress only; {@link #countDataRows()} is exact.
+     */
+    default int estimatedDataRows() throws Exception {
+        return -1;
+    }
+
+    /** Data rows (header excluded, blank rows skipped). */
+    default int countDataRows() throws Exception {
+        int[] count = {0};
+        read((rowNum, cells) -> {
+            if (rowNum > 0) count[0]++;
+        });
+        return count[0];
+    }
+
+    @Override
+    void close() throws IOException;
+
+    /** Reader for the file's format, told by its extension. */
+    static RecipientSource open(File file) throws Exception {
+        switch (SourceFormat.of(file.getName())) {
+            case CSV: return new CsvRowReader(file);
+            case NDJSON: return new NdjsonRowReader(file);
+            default: return new XlsxRowReader(file);
+        }
+    }
+
+    // ================== Inner Class ==================
+
+    /** The {@link #STOP} signal: shared, so no stack trace or suppression. */
+    final class Stop extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private Stop() {
+            super("stop reading", null, false, false);
+        }
+    }
+}
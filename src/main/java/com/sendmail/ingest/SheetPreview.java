@@ -0,0 +1,161 @@
+package com.sendmail.ingest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * First rows of an uploaded recipient list (sheet, CSV or NDJSON) and the
+ * column mapping detected from them, read as a stream. Without stats the read stops as
+ * soon as the sample is complete, so sheet size barely matters; with
+ * stats the same pass goes on to the end and also counts rows, blank
+ * rows, duplicate and invalid addresses.
+ */
+public final class SheetPreview {
+
+    /**
+     * Data rows column detection looks at. Preview, analyze, the
+     * send-time detection and suppression import all use this sample so
+     * they settle on the same columns.
+     */
+    public static final int SAMPLE_ROWS = 20;
+
+    private final String[] header;
+    private final List<String[]> sample;
+    private final List<Integer> sampleRows; // sheet row number of each sample row
+    private final ColumnMapping mapping;
+    private final Map<String, Object> stats; // null unless requested
+
+    private SheetPreview(String[] header, List<String[]> sample, List<Integer> sampleRows,
+                         ColumnMapping mapping, Map<String, Object> stats) {
+        this.header = header;
+        this.sample = sample;
+        this.sampleRows = sampleRows;
+        this.mapping = mapping;
+        this.stats = stats;
+    }
+
+    public static SheetPreview read(File file, boolean withStats) throws Exception {
+        return read(file, SAMPLE_ROWS, withStats);
+    }
+
+    private static SheetPreview read(File file, int sampleSize, boolean withStats) throws Exception {
+        String[][] header = {new String[0]};
+        List<String[]> sample = new ArrayList<>(sampleSize);
+        List<Integer> rows = new ArrayList<>(sampleSize);
+        ColumnMapping[] mapping = {null};
+        Counter counter = withStats ? new Counter() : null;
+
+        try (RecipientSource reader = RecipientSource.open(file)) {
+            reader.read((rowNum, cells) -> {
+                if (rowNum == 0) {
+                    header[0] = cells;
+                    return;
+                }
+                if (sample.size() < sampleSize) {
+                    sample.add(cells);
+                    rows.add(rowNum);
+                } else if (counter == null) {
+                    throw RecipientSource.STOP;
+                }
+                if (mapping[0] == null && sample.size() == sampleSize) {
+                    mapping[0] = ColumnMapping.detect(header[0], sample);
+                }
+                if (counter != null) counter.row(rowNum, cells, mapping[0]);
+            });
+        }
+
+        if (mapping[0] == null) mapping[0] = ColumnMapping.detect(header[0], sample);
+        return new SheetPreview(header[0], sample, rows, mapping[0],
+                counter != null ? counter.finish(mapping[0]) : null);
+    }
+
+    public String[] getHeader() {
+        return header;
+    }
+
+    public List<String[]> getSample() {
+        return sample;
+    }
+
+    public List<Integer> getSampleRows() {
+        return sampleRows;
+    }
+
+    public ColumnMapping getMapping() {
+        return mapping;
+    }
+
+    /** Columns in the header or any sample row, whichever is wider. */
+    public int getWidth() {
+        int width = header.length;
+        for (String[] row : sample) width = Math.max(width, row.length);
+        return width;
+    }
+
+    public Map<String, Object> getStats() {
+        return stats;
+    }
+
+    // ================== Inner Class ==================
+
+    /**
+     * Address statistics. Rows seen before the mapping is known (the
+     * sample) are held back; afterwards only the address is looked at.
+     */
+    private static final class Counter {
+        private final List<String[]> pending = new ArrayList<>();
+        private final Set<String> seen = new HashSet<>();
+        private int rows;
+        private int lastRow;
+        private int missing;
+        private int invalid;
+        private int duplicates;
+
+        void row(int rowNum, String[] cells, ColumnMapping mapping) {
+            rows++;
+            lastRow = rowNum;
+            if (mapping == null) {
+                pending.add(cells);
+                return;
+            }
+            drain(mapping);
+            count(cells, mapping);
+        }
+
+        Map<String, Object> finish(ColumnMapping mapping) {
+            drain(mapping);
+
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("totalRows", rows);
+            m.put("blankRows", Math.max(0, lastRow - rows)); // rows 1..lastRow without data
+            m.put("missingEmail", missing);
+            m.put("invalidEmail", invalid);
+            m.put("duplicateEmail", duplicates);
+            m.put("uniqueEmail", seen.size());
+            return m;
+        }
+
+        private void drain(ColumnMapping mapping) {
+            if (pending.isEmpty()) return;
+            for (String[] cells : pending) count(cells, mapping);
+            pending.clear();
+        }
+
+        private void count(String[] cells, ColumnMapping mapping) {
+            String email = mapping.email() < cells.length ? cells[mapping.email()] : "";
+            if (email == null || email.isEmpty()) {
+                missing++;
+            } else if (!ColumnMapping.isEmail(email)) {
+                invalid++;
+            } else if (!seen.add(email.toLowerCase(Locale.ROOT))) {
+                duplicates++;
+            }
+        }
+    }
+}
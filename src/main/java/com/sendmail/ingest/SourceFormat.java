@@ -0,0 +1,36 @@
+package com.sendmail.ingest;
+
+import java.util.Locale;
+
+/** Recipient list formats; the result file is written in the upload's format. */
+public enum SourceFormat {
+
+    XLSX(".xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"),
+    CSV(".csv", "text/csv;charset=UTF-8"),
+    NDJSON(".ndjson", "application/x-ndjson;charset=UTF-8");
+
+    private final String extension;
+    private final String contentType;
+
+    SourceFormat(String extension, String contentType) {
+        this.extension = extension;
+        this.contentType = contentType;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    /** Format of a file name; anything unrecognised is taken as a workbook. */
+    public static SourceFormat of(String filename) {
+        if (filename == null) return XLSX;
+        String name = filename.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) return CSV;
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) return NDJSON;
+        return XLSX;
+    }
+}
@@ -0,0 +1,222 @@
+package com.sendmail.ingest;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streams the first sheet of an .xlsx file through the XSSF event model
+ * (shared strings table + SAX sheet handler). Rows are handed to the
+ * caller as they are parsed; nothing but the current row is kept in memory.
+ */
+public class XlsxRowReader implements RecipientSource {
+
+    // <dimension ref="A1:G1001"/> sits before the sheet data, in its first bytes
+    private static final Pattern DIMENSION =
+            Pattern.compile("<(?:\\w+:)?dimension\\s+ref=\"[A-Z]+\\d+:[A-Z]+(\\d+)\"");
+    private static final int DIMENSION_BYTES = 4096;
+
+    private final OPCPackage pkg;
+    private final XSSFReader reader;
+    private final ReadOnlySharedStringsTable strings;
+    private final StylesTable styles;
+
+    public XlsxRowReader(File file) throws Exception {
+        this.pkg = OPCPackage.open(file, PackageAccess.READ);
+        try {
+            this.reader = new XSSFReader(pkg);
+            this.strings = new ReadOnlySharedStringsTable(pkg);
+            this.styles = reader.getStylesTable();
+        } catch (Exception e) {
+            pkg.revert();
+            throw e;
+        }
+    }
+
+    /**
+     * Calls the handler for every non-blank row of the first sheet,
+     * header row included (rowNum 0), until the handler throws {@link #STOP}.
+     */
+    @Override
+    public void read(RowHandler handler) throws Exception {
+        parse(new RowCollector(handler, null), new DataFormatter());
+    }
+
+    /** Rows below the header per the sheet's dimension; only the start of the sheet is read. */
+    @Override
+    public int estimatedDataRows() throws Exception {
+        Iterator<InputStream> sheets = reader.getSheetsData();
+        if (!sheets.hasNext()) return -1;
+
+        try (InputStream sheet = sheets.next()) {
+            String head = new String(sheet.readNBytes(DIMENSION_BYTES), StandardCharsets.UTF_8);
+            Matcher m = DIMENSION.matcher(head);
+            return m.find() ? Math.max(0, Integer.parseInt(m.group(1)) - 1) : -1;
+        }
+    }
+
+    /**
+     * Like {@link #read(RowHandler)}, also handing over each row's numeric
+     * cells (numbers and dates) as stored, with their number format.
+     */
+    public void read(TypedRowHandler handler) throws Exception {
+        RawFormatter formatter = new RawFormatter();
+        parse(new RowCollector(handler, formatter), formatter);
+    }
+
+    private void parse(RowCollector collector, DataFormatter formatter) throws Exception {
+        Iterator<InputStream> sheets = reader.getSheetsData();
+        if (!sheets.hasNext()) return;
+
+        try (InputStream sheet = sheets.next()) {
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(new XSSFSheetXMLHandler(
+                    styles, null, strings, collector, formatter, false));
+            try {
+                parser.parse(new InputSource(sheet));
+            } catch (HandlerAbort abort) {
+                if (abort.cause != STOP) throw abort.cause;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        pkg.revert(); // read-only, nothing to save
+    }
+
+    @FunctionalInterface
+    public interface TypedRowHandler {
+        /** numbers[c] is null where cell c is text or blank. */
+        void onRow(int rowNum, String[] cells, NumericCell[] numbers) throws Exception;
+    }
+
+    /** A numeric cell's stored value and its number format ("General", "dd/mm/yyyy", ...). */
+    public record NumericCell(double value, String format) {
+    }
+
+    // ---------------- SAX CALLBACKS ----------------
+
+    private static class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final RowHandler handler;
+        private final TypedRowHandler typedHandler;
+        private final RawFormatter formatter;   // null: numeric cells are not kept
+        private final List<String> cells = new ArrayList<>();
+        private final List<NumericCell> numbers = new ArrayList<>();
+        private boolean hasData;
+
+        RowCollector(RowHandler handler, RawFormatter formatter) {
+            this.handler = handler;
+            this.typedHandler = null;
+            this.formatter = formatter;
+        }
+
+        RowCollector(TypedRowHandler handler, RawFormatter formatter) {
+            this.handler = null;
+            this.typedHandler = handler;
+            this.formatter = formatter;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            cells.clear();
+            numbers.clear();
+            hasData = false;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (!hasData) return;
+            try {
+                if (typedHandler == null) {
+                    handler.onRow(rowNum, cells.toArray(new String[0]));
+                } else {
+                    typedHandler.onRow(rowNum, cells.toArray(new String[0]),
+                            numbers.toArray(new NumericCell[cells.size()]));
+                }
+            } catch (Exception e) {
+                throw new HandlerAbort(e);
+            }
+        }
+
+        @Override
+        public void cell(String ref, String value, XSSFComment comment) {
+            // The formatter saw this cell's number (if any) just before
+            NumericCell number = formatter != null ? formatter.take() : null;
+            if (ref == null || value == null) return;
+
+            int col = column(ref);
+            while (cells.size() <= col) cells.add("");
+
+            String v = value.trim();
+            cells.set(col, v);
+            if (!v.isEmpty()) hasData = true;
+
+            if (formatter != null) {
+                while (numbers.size() <= col) numbers.add(null);
+                numbers.set(col, number);
+            }
+        }
+    }
+
+    /** Formats as usual and keeps the raw number of the last numeric cell. */
+    private static class RawFormatter extends DataFormatter {
+
+        private NumericCell last;
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            last = new NumericCell(value, formatString);
+            return super.formatRawCellContents(value, formatIndex, formatString);
+        }
+
+        NumericCell take() {
+            NumericCell n = last;
+            last = null;
+            return n;
+        }
+    }
+
+    /** 0-based column of an A1-style reference ("AB12" -> 27), without CellReference's regex. */
+    static int column(String ref) {
+        int col = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char c = ref.charAt(i);
+            if (c == '$') continue;
+            if (c < 'A' || c > 'Z') break;
+            col = col * 26 + (c - 'A' + 1);
+        }
+        return col - 1;
+    }
+
+    /** Carries a handler exception out of the SAX parser untouched (no stack trace of its own). */
+    private static class HandlerAbort extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        final Exception cause;
+
+        HandlerAbort(Exception cause) {
+            super(null, cause, false, false);
+            this.cause = cause;
+        }
+    }
+}
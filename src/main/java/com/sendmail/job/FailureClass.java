@@ -0,0 +1,55 @@
+package com.sendmail.job;
+
+/**
+ * Coarse cause of a failed row, derived from its status text so it can be
+ * recomputed from checkpoints and reports as well.
+ */
+public enum FailureClass {
+    ATTACHMENT,  // Drive download failed
+    TEMPLATE,    // subject/body could not be rendered
+    REJECTED,    // Brevo 4xx / SMTP 5xx: the message itself is bad
+    THROTTLED,   // Brevo 429/5xx / SMTP 4xx after all retries
+    SUPPRESSED,  // address on the suppression list, not sent
+    TIMEOUT,
+    NETWORK,
+    OTHER;
+
+    /** True if sending the same row again cannot succeed without changes. */
+    public boolean isPermanent() {
+        return this == REJECTED || this == TEMPLATE || this == SUPPRESSED;
+    }
+
+    public static FailureClass of(String status) {
+        if (status == null) return OTHER;
+
+        String s = status.startsWith("FAILED: ") ? status.substring(8) : status;
+        if (s.startsWith("Attachment")) return ATTACHMENT;
+        if (s.startsWith("Template")) return TEMPLATE;
+        if (s.startsWith("Suppressed")) return SUPPRESSED;
+        if (s.startsWith("Brevo API failed (")) {
+            int code = parseCode(s, 18);
+            return code == 429 || code >= 500 ? THROTTLED : REJECTED;
+        }
+        if (s.startsWith("SMTP failed (")) {
+            int code = parseCode(s, 13);
+            return code >= 400 && code < 500 ? THROTTLED : REJECTED;
+        }
+
+        String lower = s.toLowerCase();
+        if (lower.contains("timed out") || lower.contains("timeout")) return TIMEOUT;
+        if (lower.contains("connect") || lower.contains("unknownhost") || lower.contains("reset")) {
+            return NETWORK;
+        }
+        return OTHER;
+    }
+
+    private static int parseCode(String s, int from) {
+        int end = from;
+        while (end < s.length() && Character.isDigit(s.charAt(end))) end++;
+        try {
+            return Integer.parseInt(s.substring(from, end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
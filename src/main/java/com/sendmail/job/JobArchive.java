@@ -0,0 +1,230 @@
+package com.sendmail.job;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.sendmail.ingest.ColumnMapping;
+
+/**
+ * On-disk form of a finished job: {@code <jobId>.summary.json} (the
+ * job's summary) and {@code <jobId>.rows.tsv.gz} (one line per row:
+ * row, email, name, link, status, with tabs/newlines escaped).
+ */
+class JobArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(JobArchive.class);
+
+    private static final String SUMMARY = ".summary.json";
+    private static final String ROWS = ".rows.tsv.gz";
+    private static final String NULL = "\\N";
+    private static final int PAGE = 10_000;
+
+    private final File dir;
+    private final ObjectMapper mapper;
+
+    JobArchive(File dir, ObjectMapper mapper) {
+        this.dir = dir;
+        this.mapper = mapper;
+        dir.mkdirs();
+    }
+
+    /**
+     * Writes both files (each via a temp file + move); returns the summary.
+     * The summary file also keeps the job's finish time and its
+     * {@link Source}, so downloads and retries work after a restart.
+     */
+    Map<String, Object> write(JobStatus job, long finishedAt, Source source) throws Exception {
+        File rows = rowsFile(job.getJobId());
+        File tmp = new File(dir, rows.getName() + ".part");
+
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(tmp)), StandardCharsets.UTF_8))) {
+            for (int offset = 0; ; offset += PAGE) {
+                List<JobStatus.RowStatus> page = job.getRows(offset, PAGE, false);
+                for (JobStatus.RowStatus r : page) {
+                    w.write(Integer.toString(r.getRow()));
+                    field(w, r.getEmail());
+                    field(w, r.getName());
+                    field(w, r.getDriveLink());
+                    field(w, r.getStatus());
+                    w.write('\n');
+                }
+                if (page.size() < PAGE) break;
+            }
+        }
+        Files.move(tmp.toPath(), rows.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        Map<String, Object> summary = job.summary();
+        summary.put("finishedAt", finishedAt);
+        summary.put("archivedAt", System.currentTimeMillis());
+
+        Map<String, Object> onDisk = new LinkedHashMap<>(summary);
+        source.putInto(onDisk);
+
+        File sum = summaryFile(job.getJobId());
+        File sumTmp = new File(dir, sum.getName() + ".part");
+        mapper.writeValue(sumTmp, onDisk);
+        Files.move(sumTmp.toPath(), sum.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return summary;
+    }
+
+    /** Rebuilds a finished JobStatus from disk, or null if it is gone. */
+    JobStatus read(String jobId, Map<String, Object> summary) throws Exception {
+        File rows = rowsFile(jobId);
+        if (!rows.exists()) return null;
+
+        JobStatus job = new JobStatus(jobId);
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(rows)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                String[] f = line.split("\t", -1);
+                if (f.length < 5) continue;
+                job.addOrUpdateRow(Integer.parseInt(f[0]),
+                        unescape(f[1]), unescape(f[2]), unescape(f[3]), unescape(f[4]));
+            }
+        }
+
+        job.setTotalRows(intValue(summary.get("total"), job.getRowCount()));
+        job.setProgress(intValue(summary.get("progress"), 100));
+        job.markDone();
+        return job;
+    }
+
+    /**
+     * Summaries of every archived job, keyed by job ID, as written: take
+     * each one's {@link Source} out with {@link Source#takeFrom}.
+     */
+    Map<String, Map<String, Object>> list() {
+        Map<String, Map<String, Object>> out = new HashMap<>();
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUMMARY));
+        if (files == null) return out;
+
+        for (File f : files) {
+            try {
+                out.put(f.getName().substring(0, f.getName().length() - SUMMARY.length()),
+                        mapper.readValue(f, new TypeReference<Map<String, Object>>() {}));
+            } catch (Exception e) {
+                log.warn("Skipping unreadable archive {}: {}", f.getName(), e.getMessage());
+            }
+        }
+        return out;
+    }
+
+    void delete(String jobId) {
+        summaryFile(jobId).delete();
+        rowsFile(jobId).delete();
+    }
+
+    long diskBytes() {
+        long total = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) total += f.length();
+        }
+        return total;
+    }
+
+    // ---------------- HELPERS ----------------
+
+    private File summaryFile(String jobId) {
+        return new File(dir, jobId + SUMMARY);
+    }
+
+    private File rowsFile(String jobId) {
+        return new File(dir, jobId + ROWS);
+    }
+
+    /** Appends a tab and the value with tabs/newlines escaped (shared with JobJournal). */
+    static void field(Appendable w, String value) throws IOException {
+        w.append('\t');
+        if (value == null) {
+            w.append(NULL);
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> w.append("\\\\");
+                case '\t' -> w.append("\\t");
+                case '\n' -> w.append("\\n");
+                case '\r' -> w.append("\\r");
+                default -> w.append(c);
+            }
+        }
+    }
+
+    static String unescape(String s) {
+        if (NULL.equals(s)) return null;
+        if (s.indexOf('\\') < 0) return s;
+
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char n = s.charAt(++i);
+                sb.append(n == 't' ? '\t' : n == 'n' ? '\n' : n == 'r' ? '\r' : n);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int intValue(Object o, int fallback) {
+        return o instanceof Number n ? n.intValue() : fallback;
+    }
+
+    // ================== Inner Class ==================
+
+    /** Where an archived job came from: upload, columns and transport (each may be null). */
+    record Source(File excel, ColumnMapping columns, String transport) {
+
+        private static final String EXCEL = "upload";
+        private static final String COLUMNS = "columns";
+        private static final String TRANSPORT = "transport";
+
+        void putInto(Map<String, Object> summary) {
+            if (excel != null) summary.put(EXCEL, excel.getAbsolutePath());
+            if (columns != null) summary.put(COLUMNS, List.of(columns.email(), columns.name(), columns.link()));
+            if (transport != null) summary.put(TRANSPORT, transport);
+        }
+
+        /** Removes the source fields from a summary read from disk and returns them. */
+        static Source takeFrom(Map<String, Object> summary) {
+            Object excel = summary.remove(EXCEL);
+            Object columns = summary.remove(COLUMNS);
+            Object transport = summary.remove(TRANSPORT);
+
+            ColumnMapping mapping = null;
+            if (columns instanceof List<?> c && c.size() == 3) {
+                mapping = new ColumnMapping(intValue(c.get(0), -1), intValue(c.get(1), -1), intValue(c.get(2), -1));
+            }
+            return new Source(
+                    excel instanceof String path ? new File(path) : null,
+                    mapping,
+                    transport instanceof String t ? t : null);
+        }
+    }
+}
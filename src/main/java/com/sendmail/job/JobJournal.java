@@ -0,0 +1,289 @@
+package com.sendmail.job;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.sendmail.ingest.ColumnMapping;
+
+/**
+ * Append-only journal of one job, {@code <jobId>.journal}, one record per line:
+ * <pre>
+ *   C  excel-path                          job created
+ *   M  email,name,link                     sheet columns used for sending
+ *   P  transport                           mail transport used for sending
+ *   T  rows                                rows to send
+ *   S  state                               paused / resumed / cancelling
+ *   D  row  email  name  link              mail API call about to start
+ *   O  row  email  name  link  status      row outcome
+ *   E  message                             job ended
+ *   R                                      reopened for a retry
+ * </pre>
+ * A D record is forced to disk before its send goes out. Concurrent
+ * dispatches share one fsync (group commit), so the cost is one force per
+ * burst, not per row. Other records are written straight to the file and
+ * reach the disk with the next force. After a crash a row is therefore
+ * either known to be unsent or known to be in doubt, and is never sent twice.
+ */
+public final class JobJournal implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(JobJournal.class);
+
+    private static final JobJournal DISABLED = new JobJournal(null);
+
+    private final FileChannel channel;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private long written;          // records appended, guarded by writeLock
+    private volatile long synced;  // records known to be on disk
+
+    private JobJournal(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    static JobJournal open(File file) throws IOException {
+        return new JobJournal(FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+    }
+
+    /** Journal that records nothing (journaling disabled or unavailable). */
+    public static JobJournal disabled() {
+        return DISABLED;
+    }
+
+    // ---------------- RECORDS ----------------
+
+    public void created(File excel) {
+        quietly("C", excel.getAbsolutePath());
+    }
+
+    public void columns(ColumnMapping mapping) {
+        quietly("M", mapping.email() + "," + mapping.name() + "," + mapping.link());
+    }
+
+    public void transport(String name) {
+        quietly("P", name);
+    }
+
+    public void total(int rows) {
+        quietly("T", Integer.toString(rows));
+    }
+
+    public void state(JobState state) {
+        quietly("S", state.name());
+    }
+
+    /**
+     * Durably records that the rows are about to be sent. Returns only
+     * once the records are on disk; a failure here must stop the send.
+     */
+    public void dispatch(List<JobStatus.RowStatus> rows) throws IOException {
+        if (channel == null || rows.isEmpty()) return;
+
+        StringBuilder sb = new StringBuilder(rows.size() * 64);
+        for (JobStatus.RowStatus r : rows) row(sb, 'D', r, false);
+        sync(append(sb));
+    }
+
+    public void dispatch(JobStatus.RowStatus row) throws IOException {
+        dispatch(List.of(row));
+    }
+
+    public void outcome(JobStatus.RowStatus r) {
+        if (channel == null || r == null) return;
+        try {
+            append(row(new StringBuilder(96), 'O', r, true));
+        } catch (IOException e) {
+            log.warn("Journal write failed: {}", e.getMessage());
+        }
+    }
+
+    /** Last record of a job; forced so a restart sees the job as finished. */
+    public void ended(String message) {
+        if (channel == null) return;
+        try {
+            StringBuilder sb = new StringBuilder("E");
+            JobArchive.field(sb, message);
+            sync(append(sb.append('\n')));
+        } catch (IOException e) {
+            log.warn("Journal write failed: {}", e.getMessage());
+        }
+    }
+
+    /** Marks an ended job as running again (retry). */
+    public void reopened() {
+        quietly("R", null);
+    }
+
+    /**
+     * Starts a fresh journal for a job whose journal was already deleted
+     * (archived), from everything known about it so far.
+     */
+    void snapshot(JobStatus job, File excel, ColumnMapping mapping, String transport)
+            throws IOException {
+        if (excel != null) created(excel);
+        if (mapping != null) columns(mapping);
+        if (transport != null) transport(transport);
+        if (job.getTotalRows() >= 0) total(job.getTotalRows());
+
+        final int page = 10_000;
+        for (int offset = 0; ; offset += page) {
+            List<JobStatus.RowStatus> rows = job.getRows(offset, page, false);
+            StringBuilder sb = new StringBuilder(rows.size() * 96);
+            for (JobStatus.RowStatus r : rows) row(sb, 'O', r, true);
+            sync(append(sb));
+            if (rows.size() < page) break;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (channel == null) return;
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+
+    // ---------------- REPLAY ----------------
+
+    /**
+     * Rebuilds a job from its journal. Rows are restored with their last
+     * recorded outcome; rows dispatched without an outcome are reported
+     * as in doubt. A torn last line from a crash is ignored.
+     */
+    static Replay replay(String jobId, File file) throws IOException {
+        Replay r = new Replay(new JobStatus(jobId));
+        Map<Integer, JobStatus.RowStatus> dispatched = new HashMap<>();
+
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] f = line.split("\t", -1);
+                try {
+                    switch (f[0]) {
+                        case "C" -> r.excel = new File(JobArchive.unescape(f[1]));
+                        case "M" -> {
+                            String[] c = f[1].split(",");
+                            r.columns = new ColumnMapping(Integer.parseInt(c[0]),
+                                    Integer.parseInt(c[1]), Integer.parseInt(c[2]));
+                        }
+                        case "P" -> r.transport = f[1];
+                        case "T" -> r.job.setTotalRows(Integer.parseInt(f[1]));
+                        case "S" -> r.state = JobState.valueOf(f[1]);
+                        case "D" -> {
+                            if (f.length < 5) continue;
+                            int row = Integer.parseInt(f[1]);
+                            dispatched.put(row, new JobStatus.RowStatus(row, JobArchive.unescape(f[2]),
+                                    JobArchive.unescape(f[3]), JobArchive.unescape(f[4]), null));
+                        }
+                        case "O" -> {
+                            if (f.length < 6) continue;
+                            int row = Integer.parseInt(f[1]);
+                            r.job.addOrUpdateRow(row, JobArchive.unescape(f[2]),
+                                    JobArchive.unescape(f[3]), JobArchive.unescape(f[4]),
+                                    JobArchive.unescape(f[5]));
+                            dispatched.remove(row);
+                        }
+                        case "E" -> r.endMessage = f.length > 1 ? JobArchive.unescape(f[1]) : "";
+                        case "R" -> r.endMessage = null;
+                        default -> { }
+                    }
+                } catch (RuntimeException torn) {
+                    // partial line from an interrupted write
+                }
+            }
+        }
+        r.inDoubt = dispatched;
+        return r;
+    }
+
+    /** What a journal says about its job. */
+    static final class Replay {
+        final JobStatus job;
+        File excel;
+        ColumnMapping columns;
+        String transport;
+        JobState state = JobState.RUNNING;
+        String endMessage; // null while unfinished
+        Map<Integer, JobStatus.RowStatus> inDoubt;
+
+        Replay(JobStatus job) {
+            this.job = job;
+        }
+    }
+
+    // ---------------- HELPERS ----------------
+
+    private static StringBuilder row(StringBuilder sb, char type, JobStatus.RowStatus r, boolean status)
+            throws IOException {
+        sb.append(type).append('\t').append(r.getRow());
+        JobArchive.field(sb, r.getEmail());
+        JobArchive.field(sb, r.getName());
+        JobArchive.field(sb, r.getDriveLink());
+        if (status) JobArchive.field(sb, r.getStatus());
+        return sb.append('\n');
+    }
+
+    private void quietly(String type, String value) {
+        if (channel == null) return;
+        try {
+            StringBuilder sb = new StringBuilder(type);
+            JobArchive.field(sb, value);
+            append(sb.append('\n'));
+        } catch (IOException e) {
+            log.warn("Journal write failed: {}", e.getMessage());
+        }
+    }
+
+    /** Appends whole lines; returns the sequence number to sync up to. */
+    private long append(CharSequence lines) throws IOException {
+        ByteBuffer buf = StandardCharsets.UTF_8.encode(lines.toString());
+        writeLock.lock();
+        try {
+            while (buf.hasRemaining()) channel.write(buf);
+            return ++written;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Group commit: whoever holds syncLock forces everything written so
+     * far, and callers queued behind it usually find their record already
+     * covered.
+     */
+    private void sync(long seq) throws IOException {
+        if (synced >= seq) return;
+
+        syncLock.lock();
+        try {
+            if (synced >= seq) return;
+
+            long target;
+            writeLock.lock();
+            try {
+                target = written;
+            } finally {
+                writeLock.unlock();
+            }
+            channel.force(false);
+            synced = target;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+}
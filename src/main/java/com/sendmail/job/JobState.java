@@ -0,0 +1,14 @@
+package com.sendmail.job;
+
+/**
+ * Lifecycle of a send job.
+ *
+ * RUNNING -> PAUSED -> RUNNING (any number of times),
+ * RUNNING/PAUSED -> CANCELLING -> DONE, or RUNNING -> DONE when all rows are through.
+ */
+public enum JobState {
+    RUNNING,
+    PAUSED,
+    CANCELLING,
+    DONE
+}
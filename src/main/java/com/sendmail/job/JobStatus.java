@@ -1,18 +1,33 @@
 package com.sendmail.job;
 
-import java.util.Comparator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class JobStatus {
 
     private final String jobId;
     private volatile int progress;
-    private volatile boolean paused = false;
+    private volatile JobState state = JobState.RUNNING;
+
+    // Guards state transitions; paused workers park on notPaused
+    private final ReentrantLock stateLock = new ReentrantLock();
+    private final Condition notPaused = stateLock.newCondition();
+    private final Set<Runnable> cancelHooks = ConcurrentHashMap.newKeySet();
+
+    private final RowTable rows = new RowTable();
 
-    private final Map<Integer, RowStatus> rows = new ConcurrentHashMap<>();
+    // -------- Live aggregates --------
+    private volatile int totalRows = -1;
+    private final LatencyHistogram downloadLatency = new LatencyHistogram();
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
 
     public JobStatus(String jobId) {
         this.jobId = jobId;
@@ -30,12 +45,105 @@ public class JobStatus {
         this.progress = progress;
     }
 
+    /** Data rows in the sheet; -1 until the sheet has been counted. */
+    public int getTotalRows() {
+        return totalRows;
+    }
+
+    public void setTotalRows(int totalRows) {
+        this.totalRows = totalRows;
+    }
+
+    public JobState getState() {
+        return state;
+    }
+
     public boolean isPaused() {
-        return paused;
+        return state == JobState.PAUSED;
+    }
+
+    public boolean cancelRequested() {
+        return state == JobState.CANCELLING;
+    }
+
+    // ---------------- LIFECYCLE ----------------
+
+    /** RUNNING -> PAUSED. False if the job is in any other state. */
+    public boolean pause() {
+        return transition(JobState.RUNNING, JobState.PAUSED);
+    }
+
+    /** PAUSED -> RUNNING, waking every parked worker. */
+    public boolean resume() {
+        return transition(JobState.PAUSED, JobState.RUNNING);
+    }
+
+    /**
+     * RUNNING/PAUSED -> CANCELLING. Parked workers wake up and every
+     * registered cancel hook runs (aborting in-flight calls).
+     */
+    public boolean cancel() {
+        if (!transition(JobState.RUNNING, JobState.CANCELLING)
+                && !transition(JobState.PAUSED, JobState.CANCELLING)) {
+            return false;
+        }
+        for (Runnable hook : cancelHooks) {
+            hook.run();
+        }
+        return true;
+    }
+
+    /** DONE -> RUNNING, for a retry of the finished job. */
+    public boolean reopen() {
+        return transition(JobState.DONE, JobState.RUNNING);
+    }
+
+    public void markDone() {
+        stateLock.lock();
+        try {
+            state = JobState.DONE;
+            notPaused.signalAll();
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * Parks the calling thread while the job is paused (no polling; a
+     * virtual thread also releases its carrier). Returns the state it woke to.
+     */
+    public JobState awaitNotPaused() throws InterruptedException {
+        stateLock.lock();
+        try {
+            while (state == JobState.PAUSED) {
+                notPaused.await();
+            }
+            return state;
+        } finally {
+            stateLock.unlock();
+        }
+    }
+
+    /**
+     * Registers an abort action to run if the job is cancelled while the
+     * caller is busy. Runs it at once if cancellation already started.
+     */
+    public Registration onCancel(Runnable abort) {
+        cancelHooks.add(abort);
+        if (state == JobState.CANCELLING) abort.run();
+        return () -> cancelHooks.remove(abort);
     }
 
-    public void setPaused(boolean paused) {
-        this.paused = paused;
+    private boolean transition(JobState from, JobState to) {
+        stateLock.lock();
+        try {
+            if (state != from) return false;
+            state = to;
+            notPaused.signalAll();
+            return true;
+        } finally {
+            stateLock.unlock();
+        }
     }
 
     /**
@@ -48,38 +156,124 @@ public class JobStatus {
             String driveLink,
             String status
     ) {
-        rows.compute(row, (k, existing) -> {
-            if (existing == null) {
-                return new RowStatus(row, email, name, driveLink, status);
-            }
-            existing.setStatus(status);
-            return existing;
-        });
+        rows.put(row, email, name, driveLink, status);
+    }
+
+    /** Status update for a known row; unknown rows are ignored. */
+    public void updateRowStatus(int row, String status) {
+        rows.setStatus(row, status);
     }
 
+    /** Snapshot of one row, or null if the row was never added. */
     public RowStatus getRow(int row) {
         return rows.get(row);
     }
 
+    /** Current status text of a row without building a snapshot. */
+    public String statusOf(int row) {
+        return rows.status(row);
+    }
+
+    /** True once the row has a final status (sent, failed, cancelled). */
+    public boolean hasOutcome(int row) {
+        byte code = rows.code(row);
+        return code != RowTable.EMPTY && code != RowTable.PROCESSING;
+    }
+
+    /** Rows whose last attempt failed, in row order. */
+    public List<RowStatus> failedRows() {
+        return rows.withCode(RowTable.FAILED);
+    }
+
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    /** Every row; kept out of the /status JSON (paged through /rows instead). */
+    @JsonIgnore
     public List<RowStatus> getRowStatusList() {
         return getAllRowsNewestFirst();
     }
 
+    @JsonIgnore
     public List<RowStatus> getAllRowsNewestFirst() {
-        return rows.values()
-                .stream()
-                .sorted(Comparator.comparingInt(RowStatus::getRow).reversed())
-                .collect(Collectors.toList());
+        return rows.all(true);
+    }
+
+    /** One page of rows, newest (highest row number) first or in sheet order. */
+    public List<RowStatus> getRows(int offset, int limit, boolean newestFirst) {
+        return rows.page(offset, limit, newestFirst);
+    }
+
+    /** Visits every row without building a list. */
+    public void forEachRow(boolean newestFirst, Consumer<RowStatus> action) {
+        rows.forEach(newestFirst, action);
+    }
+
+    // ---------------- AGGREGATES ----------------
+
+    public void recordDownload(long nanos) {
+        downloadLatency.recordNanos(nanos);
+    }
+
+    /**
+     * Send time of one row. A batch call (one request for many rows)
+     * records its elapsed time divided by its row count, once per row, so
+     * the count is rows sent in either mode and the percentiles are a
+     * per-row cost, not the latency of a single request.
+     */
+    public void recordSend(long nanos) {
+        sendLatency.recordNanos(nanos);
+    }
+
+    /**
+     * Counts, failure breakdown and latencies. Built from counters kept up
+     * to date on every status change, so the cost is the same for 10 or
+     * 100k rows.
+     */
+    public Map<String, Object> summary() {
+        long sent = rows.count(RowTable.SENT);
+        long failed = rows.count(RowTable.FAILED);
+        long cancelled = rows.count(RowTable.CANCELLED);
+        long processing = rows.count(RowTable.PROCESSING);
+
+        Map<String, Long> failures = new LinkedHashMap<>();
+        for (FailureClass cls : FailureClass.values()) {
+            long n = rows.failures(cls);
+            if (n > 0) failures.put(cls.name(), n);
+        }
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("jobId", jobId);
+        m.put("state", state.name());
+        m.put("progress", progress);
+        m.put("total", totalRows);
+        m.put("sent", sent);
+        m.put("failed", failed);
+        m.put("cancelled", cancelled);
+        m.put("processing", processing);
+        m.put("pending", totalRows < 0 ? -1 : Math.max(0, totalRows - sent - failed - cancelled));
+        m.put("failuresByClass", failures);
+        m.put("downloadLatency", downloadLatency.snapshot());
+        m.put("sendLatency", sendLatency.snapshot());
+        return m;
     }
 
     // ================== Inner Class ==================
 
+    /** Handle for a cancel hook; closing it unregisters the hook. */
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /** Immutable view of one row as it was when read. */
     public static class RowStatus {
         private final int row;
         private final String email;
         private final String name;
         private final String driveLink;
-        private volatile String status;
+        private final String status;
 
         public RowStatus(
                 int row,
@@ -114,9 +308,5 @@ public class JobStatus {
         public String getStatus() {
             return status;
         }
-
-        public void setStatus(String status) {
-            this.status = status;
-        }
     }
 }
@@ -1,34 +1,245 @@
 package com.sendmail.job;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import java.io.File;
 
+import com.sendmail.ingest.ColumnMapping;
+
+/**
+ * Jobs by ID. Running jobs always stay in memory. Finished jobs are kept
+ * in memory only up to max-finished-in-memory and memory-ttl-minutes; then
+ * they are written to the on-disk archive and only their summary stays.
+ * Rows of an archived job are loaded back the first time someone asks.
+ *
+ * Every job also has a {@link JobJournal} until it is archived. On startup
+ * the journals are replayed: finished jobs come back as finished, the
+ * others are listed by {@link #unfinishedJobs()} for the sender to resume.
+ */
 @Component
 public class JobStatusStore {
 
+    private static final Logger log = LoggerFactory.getLogger(JobStatusStore.class);
+
+    private static final String JOURNAL = ".journal";
+
+    /** Status of a row whose send may or may not have gone out before a crash. */
+    public static final String IN_DOUBT = "FAILED: Interrupted during send, delivery unknown";
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${sendmail.jobs.max-finished-in-memory:20}")
+    private int maxFinishedInMemory;
+
+    @Value("${sendmail.jobs.memory-ttl-minutes:30}")
+    private long memoryTtlMinutes;
+
+    @Value("${sendmail.jobs.retention-hours:168}")
+    private long retentionHours;
+
+    @Value("${sendmail.jobs.archive-dir:}")
+    private String archiveDir;
+
+    @Value("${sendmail.journal.enabled:true}")
+    private boolean journalEnabled;
+
+    @Value("${sendmail.journal.dir:}")
+    private String journalDir;
+
     private final Map<String, JobStatus> store = new ConcurrentHashMap<>();
 
     private final Map<String, File> excelFiles = new ConcurrentHashMap<>();
+    private final Map<String, ColumnMapping> columns = new ConcurrentHashMap<>();
+    private final Map<String, String> transports = new ConcurrentHashMap<>();
+
+    // Finished jobs: jobId -> finish time (ms)
+    private final Map<String, Long> finishedAt = new ConcurrentHashMap<>();
+
+    // Archived jobs: jobId -> summary (rows are on disk)
+    private final Map<String, Map<String, Object>> archived = new ConcurrentHashMap<>();
+
+    private final Map<String, JobJournal> journals = new ConcurrentHashMap<>();
+
+    // Replayed jobs that had not ended yet
+    private final Set<String> unfinished = ConcurrentHashMap.newKeySet();
+
+    private JobArchive archive;
+    private File journalsDir;
+
+    @PostConstruct
+    void init() {
+        archive = new JobArchive(dir(archiveDir, "sendmail-archive"), objectMapper);
+
+        // Jobs archived by an earlier run stay queryable (and downloadable) until retention ends
+        archive.list().forEach((jobId, summary) -> {
+            JobArchive.Source source = JobArchive.Source.takeFrom(summary);
+            if (source.excel() != null) excelFiles.put(jobId, source.excel());
+            if (source.columns() != null) columns.put(jobId, source.columns());
+            if (source.transport() != null) transports.put(jobId, source.transport());
+            archived.put(jobId, summary);
+        });
+
+        if (journalEnabled) {
+            journalsDir = dir(journalDir, "sendmail-journal");
+            journalsDir.mkdirs();
+            replayJournals();
+        }
+    }
 
     public void registerExcel(String jobId, File file) {
         excelFiles.put(jobId, file);
+        journal(jobId).created(file);
     }
 
     public File getExcel(String jobId) {
         return excelFiles.get(jobId);
     }
 
+    /** Sheet columns the job reads its recipients from. */
+    public void registerColumns(String jobId, ColumnMapping mapping) {
+        columns.put(jobId, mapping);
+        journal(jobId).columns(mapping);
+    }
+
+    /** The job's columns, or null if not decided yet (detected on start). */
+    public ColumnMapping getColumns(String jobId) {
+        return columns.get(jobId);
+    }
+
+    /** Mail transport the job sends through. */
+    public void registerTransport(String jobId, String transport) {
+        transports.put(jobId, transport);
+        journal(jobId).transport(transport);
+    }
+
+    /** The job's transport, or null for the default one. */
+    public String getTransport(String jobId) {
+        return transports.get(jobId);
+    }
+
     public JobStatus createJob(String jobId) {
         JobStatus js = new JobStatus(jobId);
         store.put(jobId, js);
+
+        if (journalEnabled) {
+            try {
+                journals.put(jobId, JobJournal.open(journalFile(jobId)));
+            } catch (Exception e) {
+                log.warn("Journal open failed for {}: {}", jobId, e.getMessage());
+            }
+        }
         return js;
     }
 
+    /** The job's journal; a no-op journal if there is none. */
+    public JobJournal journal(String jobId) {
+        JobJournal j = journals.get(jobId);
+        return j != null ? j : JobJournal.disabled();
+    }
+
+    /** Jobs found unfinished in their journal at startup, to be resumed. */
+    public List<String> unfinishedJobs() {
+        return List.copyOf(unfinished);
+    }
+
+    /**
+     * Live or finished job; an archived job's rows are loaded back on first
+     * access. The load runs outside the store's map, so a slow disk only
+     * holds up callers of that one job; if two load it at once, one copy wins.
+     */
     public JobStatus getJob(String jobId) {
-        return store.get(jobId);
+        JobStatus js = store.get(jobId);
+        Map<String, Object> summary = archived.get(jobId);
+        if (js != null || summary == null) return js;
+
+        JobStatus restored;
+        try {
+            restored = archive.read(jobId, summary);
+        } catch (Exception e) {
+            log.warn("Archive load failed for {}: {}", jobId, e.getMessage());
+            return null;
+        }
+        if (restored == null) return null;
+
+        JobStatus current = store.putIfAbsent(jobId, restored);
+        if (current != null) return current;
+        if (!archived.containsKey(jobId)) {
+            store.remove(jobId, restored); // expired while loading
+            return null;
+        }
+        finishedAt.put(jobId, System.currentTimeMillis());
+        return restored;
+    }
+
+    /**
+     * Summary of any known job without loading archived rows. Null if unknown.
+     */
+    public Map<String, Object> getSummary(String jobId) {
+        Map<String, Object> saved = archived.get(jobId);
+        if (saved != null) return saved; // latencies survive only here
+
+        JobStatus js = store.get(jobId);
+        return js != null ? js.summary() : null;
+    }
+
+    public void markFinished(String jobId) {
+        if (store.containsKey(jobId)) {
+            finishedAt.put(jobId, System.currentTimeMillis());
+        }
+        unfinished.remove(jobId);
+
+        // Journal stays on disk until the job is archived
+        JobJournal j = journals.remove(jobId);
+        if (j != null) j.close();
+    }
+
+    /**
+     * Takes a finished job back to running for a retry. Its archive is
+     * dropped and its journal reopened; a journal already deleted by
+     * archiving is rebuilt from the rows, so a crash mid-retry replays
+     * correctly. The job must already be loaded (see getJob).
+     */
+    public void reopen(String jobId) {
+        JobStatus js = store.get(jobId);
+        if (js == null) return;
+
+        finishedAt.remove(jobId);
+        if (archived.remove(jobId) != null) archive.delete(jobId);
+        if (!journalEnabled) return;
+
+        try {
+            File f = journalFile(jobId);
+            boolean fresh = !f.exists();
+            JobJournal j = JobJournal.open(f);
+            if (fresh) {
+                j.snapshot(js, excelFiles.get(jobId), columns.get(jobId), transports.get(jobId));
+            } else {
+                j.reopened();
+            }
+            journals.put(jobId, j);
+        } catch (Exception e) {
+            log.warn("Journal reopen failed for {}: {}", jobId, e.getMessage());
+        }
+    }
+
+    public boolean isFinished(String jobId) {
+        return finishedAt.containsKey(jobId) || archived.containsKey(jobId);
     }
 
     public void addOrUpdateRow(
@@ -49,10 +260,7 @@ public class JobStatusStore {
     public void updateRowStatus(String jobId, int row, String status) {
         JobStatus js = store.get(jobId);
         if (js != null) {
-            JobStatus.RowStatus rs = js.getRow(row);
-            if (rs != null) {
-                rs.setStatus(status);
-            }
+            js.updateRowStatus(row, status);
         }
     }
 
@@ -67,4 +275,176 @@ public class JobStatusStore {
             js.setProgress(progress);
         }
     }
+
+    // ---------------- EVICTION ----------------
+
+    /**
+     * Moves finished jobs out of memory (oldest first) while there are more
+     * than max-finished-in-memory or they are older than memory-ttl-minutes.
+     */
+    public void evictFinished() {
+        long now = System.currentTimeMillis();
+        long ttl = memoryTtlMinutes * 60_000;
+
+        List<Map.Entry<String, Long>> finished = new ArrayList<>(finishedAt.entrySet());
+        finished.sort(Map.Entry.comparingByValue(Comparator.naturalOrder()));
+
+        int inMemory = finished.size();
+        for (Map.Entry<String, Long> e : finished) {
+            if (inMemory <= maxFinishedInMemory && now - e.getValue() <= ttl) break;
+
+            if (spill(e.getKey())) inMemory--;
+        }
+    }
+
+    /**
+     * Forgets jobs finished more than retention-hours ago, archive included.
+     * Returns their IDs so the caller can delete the job's other files.
+     */
+    public List<String> expire() {
+        long cutoff = System.currentTimeMillis() - retentionHours * 3_600_000;
+        List<String> expired = new ArrayList<>();
+
+        for (Map.Entry<String, Map<String, Object>> e : archived.entrySet()) {
+            // Retention counts from the job's end; archives without it from archiving
+            Object at = e.getValue().getOrDefault("finishedAt", e.getValue().get("archivedAt"));
+            if (at instanceof Number n && n.longValue() < cutoff) expired.add(e.getKey());
+        }
+        for (Map.Entry<String, Long> e : finishedAt.entrySet()) {
+            if (e.getValue() < cutoff && !expired.contains(e.getKey())) expired.add(e.getKey());
+        }
+
+        for (String jobId : expired) {
+            archived.remove(jobId);
+            finishedAt.remove(jobId);
+            store.remove(jobId);
+            excelFiles.remove(jobId);
+            columns.remove(jobId);
+            transports.remove(jobId);
+            archive.delete(jobId);
+            deleteJournal(jobId);
+        }
+        return expired;
+    }
+
+    /** Counts of jobs by where they live, and the archive size on disk. */
+    public Map<String, Object> stats() {
+        long rowsInMemory = 0;
+        for (JobStatus js : store.values()) rowsInMemory += js.getRowCount();
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("jobsInMemory", store.size());
+        m.put("runningJobs", store.size() - finishedAt.size());
+        m.put("finishedInMemory", finishedAt.size());
+        m.put("archivedJobs", archived.size());
+        m.put("rowsInMemory", rowsInMemory);
+        m.put("archiveBytes", archive.diskBytes());
+        return m;
+    }
+
+    /**
+     * True while the store still holds the job: running, waiting to be
+     * resumed, or finished and within retention (in memory or archived).
+     */
+    public boolean isKnown(String jobId) {
+        return store.containsKey(jobId) || archived.containsKey(jobId)
+                || excelFiles.containsKey(jobId) || unfinished.contains(jobId);
+    }
+
+    // ---------------- JOURNAL REPLAY ----------------
+
+    /**
+     * Restores every journaled job. Rows a crash left in doubt (dispatched,
+     * no outcome) are settled as failed rather than sent again.
+     */
+    private void replayJournals() {
+        File[] files = journalsDir.listFiles((d, name) -> name.endsWith(JOURNAL));
+        if (files == null) return;
+
+        for (File f : files) {
+            String jobId = f.getName().substring(0, f.getName().length() - JOURNAL.length());
+            if (archived.containsKey(jobId)) {
+                f.delete(); // archived, journal deletion was interrupted
+                continue;
+            }
+
+            try {
+                JobJournal.Replay r = JobJournal.replay(jobId, f);
+                store.put(jobId, r.job);
+                if (r.excel != null) excelFiles.put(jobId, r.excel);
+                if (r.columns != null) columns.put(jobId, r.columns);
+                if (r.transport != null) transports.put(jobId, r.transport);
+
+                if (r.endMessage != null) {
+                    r.job.setProgress(100);
+                    r.job.markDone();
+                    finishedAt.put(jobId, System.currentTimeMillis());
+                    continue;
+                }
+
+                int total = r.job.getTotalRows();
+                if (total > 0) r.job.setProgress(r.job.getRowCount() * 100 / total);
+
+                JobJournal j = JobJournal.open(f);
+                journals.put(jobId, j);
+                for (JobStatus.RowStatus d : r.inDoubt.values()) {
+                    r.job.addOrUpdateRow(d.getRow(), d.getEmail(), d.getName(), d.getDriveLink(), IN_DOUBT);
+                    j.outcome(r.job.getRow(d.getRow()));
+                }
+
+                if (r.state == JobState.PAUSED) r.job.pause();
+                if (r.state == JobState.CANCELLING) r.job.cancel();
+                unfinished.add(jobId);
+
+                log.info("Recovered job {}: {} rows done, {} in doubt",
+                        jobId, r.job.getRowCount(), r.inDoubt.size());
+            } catch (Exception e) {
+                log.warn("Journal replay failed for {}: {}", jobId, e.getMessage());
+            }
+        }
+    }
+
+    // ---------------- HELPERS ----------------
+
+    private static File dir(String configured, String defaultName) {
+        return configured == null || configured.isBlank()
+                ? new File(System.getProperty("java.io.tmpdir"), defaultName)
+                : new File(configured);
+    }
+
+    private File journalFile(String jobId) {
+        return new File(journalsDir, jobId + JOURNAL);
+    }
+
+    private void deleteJournal(String jobId) {
+        JobJournal j = journals.remove(jobId);
+        if (j != null) j.close();
+        if (journalsDir != null) journalFile(jobId).delete();
+    }
+
+    private boolean spill(String jobId) {
+        JobStatus js = store.get(jobId);
+        if (js == null) {
+            finishedAt.remove(jobId);
+            return false;
+        }
+        if (js.getState() != JobState.DONE) return false; // reopened for a retry
+
+        try {
+            // Restored jobs are already on disk
+            if (!archived.containsKey(jobId)) {
+                Long finished = finishedAt.get(jobId);
+                archived.put(jobId, archive.write(js,
+                        finished != null ? finished : System.currentTimeMillis(),
+                        new JobArchive.Source(excelFiles.get(jobId), columns.get(jobId), transports.get(jobId))));
+            }
+            store.remove(jobId, js);
+            finishedAt.remove(jobId);
+            deleteJournal(jobId);
+            return true;
+        } catch (Exception e) {
+            log.warn("Archive write failed for {}: {}", jobId, e.getMessage());
+            return false;
+        }
+    }
 }
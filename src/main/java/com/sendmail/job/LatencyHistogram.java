@@ -0,0 +1,89 @@
+package com.sendmail.job;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size log-linear latency histogram (HDR style): every power of two
+ * is split into 8 linear buckets, so any recorded value is known to within
+ * 12.5%. Recording is lock-free and allocation-free; percentiles scan the
+ * fixed bucket array, so their cost does not depend on how much was recorded.
+ * Values are microseconds.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void recordNanos(long nanos) {
+        record(Math.max(0, nanos / 1000));
+    }
+
+    public void record(long micros) {
+        long v = Math.max(0, micros);
+        counts.incrementAndGet(index(v));
+        total.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    /** Upper bound of the bucket holding the given percentile, in micros. */
+    public long percentile(double p) {
+        long n = count();
+        if (n == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(n * p / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(upper(i), max.get());
+        }
+        return max.get();
+    }
+
+    /** count, mean, p50, p90, p99 and max in milliseconds. */
+    public Map<String, Object> snapshot() {
+        long n = count();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("count", n);
+        m.put("meanMs", n == 0 ? 0.0 : millis(sum.sum() / (double) n));
+        m.put("p50Ms", millis(percentile(50)));
+        m.put("p90Ms", millis(percentile(90)));
+        m.put("p99Ms", millis(percentile(99)));
+        m.put("maxMs", millis(max.get()));
+        return m;
+    }
+
+    // ---------------- HELPERS ----------------
+
+    static int index(long v) {
+        if (v < 2 * SUB) return (int) v;
+        int e = 63 - Long.numberOfLeadingZeros(v);
+        return (e - SUB_BITS) * SUB + (int) (v >>> (e - SUB_BITS));
+    }
+
+    static long upper(int index) {
+        if (index < 2 * SUB) return index;
+        int shift = (index >>> SUB_BITS) - 1;
+        if (shift > 58) return Long.MAX_VALUE;
+        long m = SUB + (index & (SUB - 1));
+        return ((m + 1) << shift) - 1;
+    }
+
+    private static double millis(double micros) {
+        return Math.round(micros / 10.0) / 100.0;
+    }
+}
@@ -0,0 +1,345 @@
+package com.sendmail.job;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Rows of one job, stored column-wise and indexed by sheet row number.
+ *
+ * Rows live in fixed-size pages allocated on first use. A row's status
+ * is a single int: a byte code (SENT, FAILED, ...) plus the id of its full
+ * text in a de-duplicated text table, so a thousand rows failing with the
+ * same error share one String. Status updates are single atomic stores;
+ * email/name/link are written once, before the row's first status is
+ * published. Iteration walks the pages in row order, either direction,
+ * so listing rows never sorts.
+ *
+ * Every status change also moves the row between per-code counters (and,
+ * for failures, per-FailureClass counters), so aggregates are O(1) reads.
+ */
+public final class RowTable {
+
+    // -------- Status codes --------
+    public static final byte EMPTY = 0;
+    public static final byte PROCESSING = 1;
+    public static final byte SENT = 2;
+    public static final byte FAILED = 3;
+    public static final byte CANCELLED = 4;
+    public static final byte OTHER = 5;
+
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private volatile Page[] pages = new Page[8];
+    private final ReentrantLock growLock = new ReentrantLock();
+
+    private final TextTable texts = new TextTable();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger maxRow = new AtomicInteger(-1);
+
+    private final LongAdder[] byCode = adders(OTHER + 1);
+    private final LongAdder[] byClass = adders(FailureClass.values().length);
+
+    /**
+     * Inserts the row the first time it is seen; afterwards only its
+     * status changes. Returns true if the row was inserted.
+     */
+    public boolean put(int row, String email, String name, String driveLink, String status) {
+        Page page = pageFor(row, true);
+        int i = row & PAGE_MASK;
+        int packed = pack(status);
+
+        if (page.state.get(i) != 0) {
+            moved(page.state.getAndSet(i, packed), packed);
+            return false;
+        }
+
+        page.email[i] = email;
+        page.name[i] = name;
+        page.link[i] = driveLink;
+        if (!page.state.compareAndSet(i, 0, packed)) {
+            // inserted concurrently; last status wins
+            moved(page.state.getAndSet(i, packed), packed);
+            return false;
+        }
+
+        moved(0, packed);
+        page.rows.incrementAndGet();
+        size.incrementAndGet();
+        maxRow.accumulateAndGet(row, Math::max);
+        return true;
+    }
+
+    /** Updates the status of an existing row. False if the row is unknown. */
+    public boolean setStatus(int row, String status) {
+        Page page = pageFor(row, false);
+        if (page == null) return false;
+
+        int i = row & PAGE_MASK;
+        int packed = pack(status);
+        int prev;
+        do {
+            prev = page.state.get(i);
+            if (prev == 0) return false;
+        } while (!page.state.compareAndSet(i, prev, packed));
+
+        moved(prev, packed);
+        return true;
+    }
+
+    public byte code(int row) {
+        Page page = pageFor(row, false);
+        return page == null ? EMPTY : (byte) page.state.get(row & PAGE_MASK);
+    }
+
+    public String status(int row) {
+        Page page = pageFor(row, false);
+        if (page == null) return null;
+        int s = page.state.get(row & PAGE_MASK);
+        return s == 0 ? null : texts.get(s >>> 8);
+    }
+
+    /** Snapshot of one row, or null if unknown. */
+    public JobStatus.RowStatus get(int row) {
+        Page page = pageFor(row, false);
+        return page == null ? null : snapshot(page, row);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Up to {@code limit} rows after skipping {@code offset}, in row order
+     * or newest (highest row) first.
+     */
+    public List<JobStatus.RowStatus> page(int offset, int limit, boolean newestFirst) {
+        List<JobStatus.RowStatus> out = new ArrayList<>(Math.max(0, Math.min(limit, size())));
+        if (limit <= 0) return out;
+
+        // Skipped rows are only counted; snapshots are made for the page itself
+        walk(newestFirst, Math.max(0, offset), (page, row) -> {
+            JobStatus.RowStatus rs = snapshot(page, row);
+            if (rs != null) out.add(rs);
+            return out.size() < limit;
+        });
+        return out;
+    }
+
+    /**
+     * Visits every row in row order or newest first, one snapshot at a
+     * time, without collecting them (e.g. to stream a report).
+     */
+    public void forEach(boolean newestFirst, Consumer<JobStatus.RowStatus> action) {
+        walk(newestFirst, 0, (page, row) -> {
+            JobStatus.RowStatus rs = snapshot(page, row);
+            if (rs != null) action.accept(rs);
+            return true;
+        });
+    }
+
+    public List<JobStatus.RowStatus> all(boolean newestFirst) {
+        return page(0, Integer.MAX_VALUE, newestFirst);
+    }
+
+    /** Snapshots of the rows currently in the given status code, in row order. */
+    public List<JobStatus.RowStatus> withCode(byte code) {
+        List<JobStatus.RowStatus> out = new ArrayList<>((int) Math.min(Integer.MAX_VALUE, count(code)));
+        Page[] snapshot = pages;
+        for (int p = 0; p < snapshot.length; p++) {
+            Page page = snapshot[p];
+            if (page == null) continue;
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                // Only matching rows are materialized
+                if ((byte) page.state.get(i) != code) continue;
+                JobStatus.RowStatus rs = snapshot(page, (p << PAGE_BITS) | i);
+                if (rs != null) out.add(rs);
+            }
+        }
+        return out;
+    }
+
+    /** Rows currently in the given status code. */
+    public long count(byte code) {
+        return byCode[code].sum();
+    }
+
+    /** Rows currently failed with the given cause. */
+    public long failures(FailureClass cls) {
+        return byClass[cls.ordinal()].sum();
+    }
+
+    /** Status code for a status text as produced by the send pipeline. */
+    public static byte codeOf(String status) {
+        if (status == null) return OTHER;
+        switch (status) {
+            case "PROCESSING": return PROCESSING;
+            case "SENT": return SENT;
+            case "CANCELLED": return CANCELLED;
+            default: return status.startsWith("FAILED") ? FAILED : OTHER;
+        }
+    }
+
+    // ---------------- HELPERS ----------------
+
+    /**
+     * Walks the rows after the first {@code skip} until the visitor returns
+     * false. Missing pages are skipped whole, and so are pages that lie
+     * entirely within the skip (by their row count); skipped rows only
+     * cost a state read.
+     */
+    private void walk(boolean newestFirst, int skip, RowVisitor visitor) {
+        int max = maxRow.get();
+        Page[] snapshot = pages;
+
+        for (int n = 0; n <= max; n++) {
+            int row = newestFirst ? max - n : n;
+            int p = row >>> PAGE_BITS;
+            Page page = p < snapshot.length ? snapshot[p] : null;
+            int restOfPage = newestFirst ? (row & PAGE_MASK) : PAGE_MASK - (row & PAGE_MASK);
+
+            if (page == null) {
+                n += restOfPage;
+                continue;
+            }
+            if (skip > 0 && restOfPage == PAGE_MASK) {
+                int rows = page.rows.get();
+                if (rows <= skip) {
+                    skip -= rows;
+                    n += restOfPage;
+                    continue;
+                }
+            }
+
+            if (page.state.get(row & PAGE_MASK) == 0) continue;
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            if (!visitor.visit(page, row)) return;
+        }
+    }
+
+    private int pack(String status) {
+        String text = status != null ? status : "";
+        return (texts.intern(text) << 8) | (codeOf(text) & 0xFF);
+    }
+
+    private void moved(int from, int to) {
+        if (from != 0) count(from, -1);
+        count(to, 1);
+    }
+
+    private void count(int packed, int delta) {
+        byte code = (byte) packed;
+        byCode[code].add(delta);
+        if (code == FAILED) {
+            byClass[texts.failureClass(packed >>> 8)].add(delta);
+        }
+    }
+
+    private static LongAdder[] adders(int n) {
+        LongAdder[] a = new LongAdder[n];
+        for (int i = 0; i < n; i++) a[i] = new LongAdder();
+        return a;
+    }
+
+    private JobStatus.RowStatus snapshot(Page page, int row) {
+        int i = row & PAGE_MASK;
+        int s = page.state.get(i); // volatile read: columns below are visible
+        if (s == 0) return null;
+        return new JobStatus.RowStatus(row, page.email[i], page.name[i], page.link[i], texts.get(s >>> 8));
+    }
+
+    private Page pageFor(int row, boolean create) {
+        if (row < 0) throw new IllegalArgumentException("Negative row: " + row);
+
+        int p = row >>> PAGE_BITS;
+        Page[] current = pages;
+        Page page = p < current.length ? current[p] : null;
+        if (page != null || !create) return page;
+
+        growLock.lock();
+        try {
+            current = pages;
+            if (p >= current.length) {
+                current = Arrays.copyOf(current, Math.max(p + 1, current.length * 2));
+            }
+            if (current[p] == null) {
+                current[p] = new Page();
+            }
+            pages = current; // volatile publish of the new page (and array)
+            return current[p];
+        } finally {
+            growLock.unlock();
+        }
+    }
+
+    // ================== Inner Class ==================
+
+    private static final class Page {
+        final String[] email = new String[PAGE_SIZE];
+        final String[] name = new String[PAGE_SIZE];
+        final String[] link = new String[PAGE_SIZE];
+        final AtomicIntegerArray state = new AtomicIntegerArray(PAGE_SIZE);
+        final AtomicInteger rows = new AtomicInteger();
+    }
+
+    @FunctionalInterface
+    private interface RowVisitor {
+        /** Called for each occupied row; false stops the walk. */
+        boolean visit(Page page, int row);
+    }
+
+    /** Status texts by id; each distinct text is stored once, with its FailureClass. */
+    private static final class TextTable {
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile String[] byId = new String[16];
+        private volatile byte[] classes = new byte[16];
+        private int next = 1; // 0 is never used, so a packed status is never 0
+
+        int intern(String text) {
+            Integer id = ids.get(text);
+            if (id != null) return id;
+
+            lock.lock();
+            try {
+                id = ids.get(text);
+                if (id != null) return id;
+
+                String[] arr = byId;
+                byte[] cls = classes;
+                if (next >= arr.length) {
+                    arr = Arrays.copyOf(arr, arr.length * 2);
+                    cls = Arrays.copyOf(cls, arr.length);
+                }
+                arr[next] = text;
+                cls[next] = (byte) FailureClass.of(text).ordinal();
+                classes = cls;
+                byId = arr;
+                ids.put(text, next);
+                return next++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        String get(int id) {
+            return byId[id];
+        }
+
+        int failureClass(int id) {
+            return classes[id];
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.sendmail.pipeline;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Items waiting to be (re)submitted, each released once its delay is up.
+ *
+ * The delay doubles with every attempt, capped at maxDelayMs, and half of
+ * it is random, so rows that failed together do not come back in
+ * lockstep. The queue also counts outstanding items (waiting or in
+ * flight) so the producer knows when nothing can come back any more.
+ */
+public class RetryQueue<T> {
+
+    /** An item and the attempt it is released for (0 = first try). */
+    public record Attempt<T>(T item, int attempt, long readyAt) {
+    }
+
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final PriorityQueue<Attempt<T>> queue =
+            new PriorityQueue<>(Comparator.comparingLong(Attempt::readyAt));
+    private int outstanding;
+
+    public RetryQueue(long baseDelayMs, long maxDelayMs) {
+        this.baseDelayMs = Math.max(1, baseDelayMs);
+        this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+    }
+
+    /** A new item, released for attempt 0 right away. */
+    public void add(T item) {
+        enqueue(new Attempt<>(item, 0, System.currentTimeMillis()), true);
+    }
+
+    /** An item already outstanding that failed again: released after its backoff. */
+    public void retry(T item, int attempt) {
+        enqueue(new Attempt<>(item, attempt, System.currentTimeMillis() + delayFor(attempt)), false);
+    }
+
+    /** Puts back an attempt that was taken but could not be submitted. */
+    public void putBack(Attempt<T> attempt) {
+        enqueue(attempt, false);
+    }
+
+    /** An outstanding item reached its final outcome. */
+    public void done() {
+        lock.lock();
+        try {
+            outstanding--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The next attempt whose delay is up, waiting at most maxWaitMs for
+     * one. Null if none is ready by then.
+     */
+    public Attempt<T> poll(long maxWaitMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + maxWaitMs;
+        lock.lock();
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                Attempt<T> head = queue.peek();
+                if (head != null && head.readyAt() <= now) return queue.poll();
+                if (now >= deadline || outstanding == 0) return null;
+
+                long wake = head != null ? Math.min(head.readyAt(), deadline) : deadline;
+                changed.await(wake - now, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** True once every item has reached its final outcome. */
+    public boolean isFinished() {
+        lock.lock();
+        try {
+            return outstanding == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Backoff before the given attempt: base * 2^(attempt-1), capped, half jittered. */
+    long delayFor(int attempt) {
+        if (attempt <= 0) return 0;
+        long cap = baseDelayMs << Math.min(attempt - 1, 30);
+        long delay = Math.min(maxDelayMs, cap > 0 ? cap : maxDelayMs);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private void enqueue(Attempt<T> attempt, boolean fresh) {
+        lock.lock();
+        try {
+            if (fresh) outstanding++;
+            queue.add(attempt);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
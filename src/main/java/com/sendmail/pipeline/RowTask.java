@@ -0,0 +1,82 @@
+package com.sendmail.pipeline;
+
+import java.io.File;
+
+import com.sendmail.ingest.RecipientRow;
+
+/**
+ * A recipient row travelling through the send pipeline, carrying what
+ * each stage produced for the next one.
+ */
+public class RowTask {
+
+    private final RecipientRow recipient;
+    private final int attempt;
+
+    private volatile File attachment;
+    private volatile String subject;
+    private volatile String body;
+    private volatile String status;
+
+    public RowTask(RecipientRow recipient) {
+        this(recipient, 0);
+    }
+
+    /** A retry of the row; attempt 0 is the first send. */
+    public RowTask(RecipientRow recipient, int attempt) {
+        this.recipient = recipient;
+        this.attempt = attempt;
+    }
+
+    public RecipientRow getRecipient() {
+        return recipient;
+    }
+
+    public int getAttempt() {
+        return attempt;
+    }
+
+    public File getAttachment() {
+        return attachment;
+    }
+
+    public void setAttachment(File attachment) {
+        this.attachment = attachment;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setContent(String subject, String body) {
+        this.subject = subject;
+        this.body = body;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    /** True once a stage has failed or cancelled the row; remaining stages skip it. */
+    public boolean isSettled() {
+        return status != null;
+    }
+
+    /** No-op on a settled row: a row already sent or suppressed keeps its outcome. */
+    public void fail(Exception ex) {
+        if (!isSettled()) this.status = "FAILED: " + ex.getMessage();
+    }
+
+    /** No-op on a settled row, as for {@link #fail}. */
+    public void cancel() {
+        if (!isSettled()) this.status = "CANCELLED";
+    }
+}
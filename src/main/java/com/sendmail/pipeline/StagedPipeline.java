@@ -0,0 +1,319 @@
+package com.sendmail.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * A chain of stages connected by bounded queues. Each stage runs its own
+ * set of workers; an item flows through every stage in order. A full queue
+ * blocks the upstream stage, so memory stays bounded.
+ *
+ * Items are always forwarded, even if a step throws: the error handler is
+ * told, and later steps decide for themselves whether to skip the item.
+ *
+ * An async stage starts work without waiting for it: each item moves on
+ * when its own future completes, so few workers keep many items in flight.
+ * Completions only go onto an unbounded queue (whatever thread completes
+ * the future never blocks); a forwarder thread of the stage hands them on.
+ */
+public class StagedPipeline<T> {
+
+    @FunctionalInterface
+    public interface Step<T> {
+        void apply(T item) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface BatchStep<T> {
+        void apply(List<T> items) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface AsyncBatchStep<T> {
+        /**
+         * Starts work on the items and returns one future per item, in
+         * order; null for an item that needs no waiting.
+         */
+        List<? extends CompletableFuture<?>> apply(List<T> items) throws Exception;
+    }
+
+    private static final Object END = new Object();
+    private static final Object WORKER_LEFT = new Object();
+
+    // How often blocked callers look for an aborted pipeline
+    private static final long ABORT_CHECK_MS = 200;
+
+    private final Executor executor;
+    private final int queueCapacity;
+    private final BiConsumer<T, Exception> onError;
+
+    private final List<Stage> stages = new ArrayList<>();
+    private CountDownLatch drained; // counted down only when the last stage has seen the end
+    private volatile boolean aborted; // a pipeline thread was interrupted: it will never drain
+
+    public StagedPipeline(Executor executor, int queueCapacity, BiConsumer<T, Exception> onError) {
+        this.executor = executor;
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.onError = onError;
+    }
+
+    public StagedPipeline<T> stage(int workers, Step<T> step) {
+        return batchStage(workers, 1, 0, items -> step.apply(items.get(0)));
+    }
+
+    /**
+     * A stage whose workers take up to {@code maxBatch} items at once,
+     * waiting at most {@code lingerMs} for a batch to fill up.
+     * If the step throws, every item of the batch is reported as failed.
+     */
+    public StagedPipeline<T> batchStage(int workers, int maxBatch, long lingerMs, BatchStep<T> step) {
+        stages.add(new Stage(Math.max(1, workers), Math.max(1, maxBatch), lingerMs, step, null,
+                new ArrayBlockingQueue<>(queueCapacity)));
+        return this;
+    }
+
+    /**
+     * A stage whose workers take whatever is queued, up to {@code maxBatch}
+     * items, start them and go back for more. An item is forwarded when its
+     * future completes (a failed future is reported to the error handler);
+     * the stage closes once every worker is done and nothing is in flight.
+     * The step bounds how many items it keeps in flight.
+     */
+    public StagedPipeline<T> asyncStage(int workers, int maxBatch, AsyncBatchStep<T> step) {
+        stages.add(new Stage(Math.max(1, workers), Math.max(1, maxBatch), 0, null, step,
+                new ArrayBlockingQueue<>(queueCapacity)));
+        return this;
+    }
+
+    public void start() {
+        if (stages.isEmpty()) throw new IllegalStateException("Pipeline has no stages");
+
+        drained = new CountDownLatch(1);
+        for (int s = 0; s < stages.size(); s++) {
+            Stage stage = stages.get(s);
+            Stage next = s + 1 < stages.size() ? stages.get(s + 1) : null;
+            for (int w = 0; w < stage.workers; w++) {
+                executor.execute(() -> runWorker(stage, next));
+            }
+            if (stage.async != null) {
+                executor.execute(() -> runForwarder(stage, next));
+            }
+        }
+    }
+
+    /**
+     * Hands an item to the first stage; blocks while its queue is full.
+     * InterruptedException if the pipeline was aborted.
+     */
+    public void submit(T item) throws InterruptedException {
+        putUnlessAborted(stages.get(0).queue, item);
+    }
+
+    /**
+     * Like submit, but gives up after the timeout so the caller can react
+     * to outside events (pause, cancel) while the pipeline is backed up.
+     */
+    public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+        checkAborted();
+        return stages.get(0).queue.offer(item, timeout, unit);
+    }
+
+    /**
+     * Signals end of input and waits until every item has left the last
+     * stage. If a pipeline thread was interrupted instead, the items can
+     * no longer drain and this throws InterruptedException.
+     */
+    public void finish() throws InterruptedException {
+        Stage first = stages.get(0);
+        for (int w = 0; w < first.workers; w++) {
+            putUnlessAborted(first.queue, END);
+        }
+        while (!drained.await(ABORT_CHECK_MS, TimeUnit.MILLISECONDS)) {
+            checkAborted();
+        }
+    }
+
+    // ---------------- WORKERS ----------------
+
+    @SuppressWarnings("unchecked")
+    private void runWorker(Stage stage, Stage next) {
+        List<T> batch = new ArrayList<>(stage.maxBatch);
+        try {
+            boolean end = false;
+            while (!end) {
+                Object o = stage.queue.take();
+                if (o == END) break;
+
+                batch.clear();
+                batch.add((T) o);
+                end = fillBatch(stage, batch);
+
+                if (stage.async != null) {
+                    startAsync(stage, next, batch);
+                    continue;
+                }
+
+                try {
+                    stage.step.apply(batch);
+                } catch (InterruptedException ie) {
+                    throw ie;
+                } catch (Exception e) {
+                    for (T item : batch) onError.accept(item, e);
+                }
+
+                if (next != null) {
+                    for (T item : batch) next.queue.put(item);
+                }
+            }
+
+            if (stage.async != null) {
+                stage.completions.add(WORKER_LEFT);
+            } else {
+                leave(stage, next);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            aborted = true;
+        }
+    }
+
+    /**
+     * Async stages: hands completed items downstream on a pipeline thread,
+     * blocking there if the next queue is full. Every worker leaving and
+     * every completion is counted here, so this thread alone closes the
+     * downstream stage once the last one is in.
+     */
+    @SuppressWarnings("unchecked")
+    private void runForwarder(Stage stage, Stage next) {
+        try {
+            while (true) {
+                Object o = stage.completions.take();
+                if (o instanceof Done done) {
+                    if (done.error() != null) onError.accept((T) done.item(), done.error());
+                    if (next != null) next.queue.put(done.item());
+                }
+                if (stage.live.decrementAndGet() == 0) break;
+            }
+            close(next);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            aborted = true;
+        }
+    }
+
+    /**
+     * Runs an async step on the batch. Every pending item holds the stage
+     * open like a worker does, until its future completes and the
+     * forwarder has handed it downstream.
+     */
+    private void startAsync(Stage stage, Stage next, List<T> batch) throws InterruptedException {
+        List<? extends CompletableFuture<?>> futures;
+        try {
+            futures = stage.async.apply(batch);
+        } catch (InterruptedException ie) {
+            throw ie;
+        } catch (Exception e) {
+            for (T item : batch) onError.accept(item, e);
+            futures = null;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            T item = batch.get(i);
+            CompletableFuture<?> f = futures != null ? futures.get(i) : null;
+            if (f == null) {
+                if (next != null) next.queue.put(item);
+                continue;
+            }
+
+            stage.live.incrementAndGet();
+            // Runs on the completing thread: enqueue only, never block
+            f.whenComplete((v, ex) -> stage.completions.add(new Done(item, ex != null ? unwrap(ex) : null)));
+        }
+    }
+
+    /** Last worker out closes the downstream stage. */
+    private void leave(Stage stage, Stage next) throws InterruptedException {
+        if (stage.live.decrementAndGet() == 0) close(next);
+    }
+
+    private void close(Stage next) throws InterruptedException {
+        if (next != null) {
+            for (int w = 0; w < next.workers; w++) next.queue.put(END);
+        } else {
+            drained.countDown();
+        }
+    }
+
+    private void putUnlessAborted(BlockingQueue<Object> queue, Object o) throws InterruptedException {
+        do {
+            checkAborted();
+        } while (!queue.offer(o, ABORT_CHECK_MS, TimeUnit.MILLISECONDS));
+    }
+
+    private void checkAborted() throws InterruptedException {
+        if (aborted) throw new InterruptedException("Pipeline aborted: a stage thread was interrupted");
+    }
+
+    private static Exception unwrap(Throwable t) {
+        if (t instanceof CompletionException && t.getCause() != null) t = t.getCause();
+        return t instanceof Exception e ? e : new RuntimeException(t);
+    }
+
+    /**
+     * Tops the batch up from the queue until full or the linger time runs out.
+     * Returns true if this worker's end marker was taken meanwhile.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean fillBatch(Stage stage, List<T> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(stage.lingerMs);
+
+        while (batch.size() < stage.maxBatch) {
+            long remaining = deadline - System.nanoTime();
+            Object o = remaining > 0
+                    ? stage.queue.poll(remaining, TimeUnit.NANOSECONDS)
+                    : stage.queue.poll();
+            if (o == null) return false;
+            if (o == END) return true;
+            batch.add((T) o);
+        }
+        return false;
+    }
+
+    // ================== Inner Class ==================
+
+    /** An async item whose future completed, waiting for the forwarder. */
+    private record Done(Object item, Exception error) {
+    }
+
+    private class Stage {
+        final int workers;
+        final int maxBatch;
+        final long lingerMs;
+        final BatchStep<T> step;
+        final AsyncBatchStep<T> async;
+        final BlockingQueue<Object> queue;
+        final AtomicInteger live; // workers still running + items in flight
+        final BlockingQueue<Object> completions = new LinkedBlockingQueue<>(); // async only
+
+        Stage(int workers, int maxBatch, long lingerMs, BatchStep<T> step, AsyncBatchStep<T> async,
+              BlockingQueue<Object> queue) {
+            this.workers = workers;
+            this.maxBatch = maxBatch;
+            this.lingerMs = lingerMs;
+            this.step = step;
+            this.async = async;
+            this.queue = queue;
+            this.live = new AtomicInteger(workers);
+        }
+    }
+}
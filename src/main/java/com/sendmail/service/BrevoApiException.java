@@ -0,0 +1,32 @@
+package com.sendmail.service;
+
+/**
+ * Non-2xx answer from the Brevo API, keeping what the rate limiter needs.
+ */
+public class BrevoApiException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final long retryAfterMillis;
+
+    public BrevoApiException(int statusCode, String body, long retryAfterMillis) {
+        super("Brevo API failed (" + statusCode + "): " + body);
+        this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /** Delay asked for by the Retry-After header, or -1 if none was sent. */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /** 429 and 5xx mean "slow down", not "this message is bad". */
+    public boolean isThrottle() {
+        return statusCode == 429 || statusCode >= 500;
+    }
+}
@@ -0,0 +1,177 @@
+package com.sendmail.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.sendmail.util.FileNames;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Builds Brevo /v3/smtp/email payloads as UTF-8 bytes.
+ *
+ * The invariant part of a payload (sender + subject, i.e. fixed for a job)
+ * is serialized once and kept as pre-encoded bytes; per recipient only the
+ * address and body go through Jackson's streaming escaper. Output goes into
+ * pooled buffers that callers hand back with {@link #release}.
+ *
+ * The object is left open (no closing brace): when an attachment name is
+ * given the payload ends inside {@code "attachment":[{"content":"}, ready
+ * for the base64 to be streamed in. {@link BrevoRequestBody} closes it.
+ */
+public class BrevoPayloadBuilder {
+
+    private static final int MAX_HEADS = 256;
+    private static final int MAX_POOLED = 32;
+    private static final int MAX_KEPT_BUFFER = 1024 * 1024;
+
+    private static final SerializedString TO = new SerializedString(",\"to\":[{\"email\":");
+    private static final SerializedString HTML = new SerializedString("}],\"htmlContent\":");
+    private static final SerializedString BATCH_HTML = new SerializedString(",\"htmlContent\":");
+    private static final SerializedString VERSIONS = new SerializedString(",\"messageVersions\":[");
+    private static final SerializedString VERSION_TO = new SerializedString("{\"to\":[{\"email\":");
+    private static final SerializedString VERSION_SUBJECT = new SerializedString("}],\"subject\":");
+    private static final SerializedString VERSION_END = new SerializedString("}");
+    private static final SerializedString COMMA = new SerializedString(",");
+    private static final SerializedString VERSIONS_END = new SerializedString("]");
+    private static final SerializedString ATTACHMENT = new SerializedString(",\"attachment\":[{\"name\":");
+    private static final SerializedString CONTENT = new SerializedString(",\"content\":\"");
+
+    private final JsonFactory factory = new JsonFactory();
+    private final String fromEmail;
+
+    private final Map<String, SerializedString> heads = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Buffer> pool = new ConcurrentLinkedQueue<>();
+
+    public BrevoPayloadBuilder(String fromEmail) {
+        this.fromEmail = fromEmail;
+    }
+
+    /**
+     * One recipient. {@code attachmentName} may be null.
+     */
+    public Buffer single(String to, String subject, String htmlBody, String attachmentName)
+            throws IOException {
+
+        Buffer buf = acquire();
+        try (JsonGenerator gen = generator(buf)) {
+            gen.writeRaw(head(subject));
+            gen.writeRaw(TO);
+            gen.writeString(to);
+            gen.writeRaw(HTML);
+            gen.writeString(htmlContent(htmlBody));
+            writeAttachmentHead(gen, attachmentName);
+        }
+        return buf;
+    }
+
+    /**
+     * Several recipients in one call via messageVersions; the first message
+     * also provides the top-level subject and body Brevo requires.
+     */
+    public Buffer batch(List<PersonalizedMessage> messages, String attachmentName)
+            throws IOException {
+
+        PersonalizedMessage first = messages.get(0);
+
+        Buffer buf = acquire();
+        try (JsonGenerator gen = generator(buf)) {
+            gen.writeRaw(head(first.subject()));
+            gen.writeRaw(BATCH_HTML);
+            gen.writeString(htmlContent(first.htmlBody()));
+
+            gen.writeRaw(VERSIONS);
+            for (int i = 0; i < messages.size(); i++) {
+                PersonalizedMessage m = messages.get(i);
+                if (i > 0) gen.writeRaw(COMMA);
+
+                gen.writeRaw(VERSION_TO);
+                gen.writeString(m.to());
+                gen.writeRaw(VERSION_SUBJECT);
+                gen.writeString(m.subject());
+                gen.writeRaw(BATCH_HTML);
+                gen.writeString(htmlContent(m.htmlBody()));
+                gen.writeRaw(VERSION_END);
+            }
+            gen.writeRaw(VERSIONS_END);
+
+            writeAttachmentHead(gen, attachmentName);
+        }
+        return buf;
+    }
+
+    public void release(Buffer buf) {
+        if (buf.array().length > MAX_KEPT_BUFFER || pool.size() >= MAX_POOLED) return;
+        buf.reset();
+        pool.offer(buf);
+    }
+
+    // ---------------- HELPERS ----------------
+
+    /** {"sender":{"email":...},"subject":... — encoded once per subject. */
+    private SerializedString head(String subject) throws IOException {
+        SerializedString head = heads.get(subject);
+        if (head != null) return head;
+
+        Buffer buf = new Buffer();
+        try (JsonGenerator gen = generator(buf)) {
+            gen.writeRaw("{\"sender\":{\"email\":");
+            gen.writeString(fromEmail);
+            gen.writeRaw("},\"subject\":");
+            gen.writeString(subject);
+        }
+        head = new SerializedString(buf.toString(StandardCharsets.UTF_8));
+
+        if (heads.size() >= MAX_HEADS) heads.clear();
+        heads.put(subject, head);
+        return head;
+    }
+
+    private void writeAttachmentHead(JsonGenerator gen, String attachmentName) throws IOException {
+        if (attachmentName == null) return;
+        gen.writeRaw(ATTACHMENT);
+        gen.writeString(FileNames.safe(attachmentName));
+        gen.writeRaw(CONTENT);
+    }
+
+    private JsonGenerator generator(Buffer buf) throws IOException {
+        JsonGenerator gen = factory.createGenerator(buf, JsonEncoding.UTF8);
+        gen.setRootValueSeparator(null); // values are spliced between raw fragments
+        return gen;
+    }
+
+    private Buffer acquire() {
+        Buffer buf = pool.poll();
+        return buf != null ? buf : new Buffer();
+    }
+
+    /** Same newline handling as before: plain-text line breaks become <br>. */
+    private static String htmlContent(String body) {
+        return body.replace("\n", "<br>");
+    }
+
+    // ================== Inner Class ==================
+
+    /** Growable byte buffer whose backing array can be written out directly. */
+    public static class Buffer extends ByteArrayOutputStream {
+
+        Buffer() {
+            super(8 * 1024);
+        }
+
+        public byte[] array() {
+            return buf;
+        }
+
+        public int length() {
+            return count;
+        }
+    }
+}
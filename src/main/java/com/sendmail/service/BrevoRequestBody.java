@@ -0,0 +1,105 @@
+package com.sendmail.service;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * JSON request body written straight to the socket: the payload built by
+ * {@link BrevoPayloadBuilder}, then (with an attachment) the file encoded
+ * chunk by chunk from a FileChannel, then the closing tail. At most one
+ * chunk of the file is in memory.
+ *
+ * The length is known up front, and every writeTo re-reads the file, so
+ * OkHttp can retry the request.
+ */
+public class BrevoRequestBody extends RequestBody {
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private static final byte[] CLOSE = "}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CLOSE_ATTACHMENT = "\"}]}".getBytes(StandardCharsets.UTF_8);
+
+    // Multiple of 3 so chunks encode without padding
+    private static final int CHUNK = 3 * 16 * 1024;
+
+    private final BrevoPayloadBuilder.Buffer head;
+    private final File file;
+    private final String cachedBase64;
+    private final long fileSize;
+
+    /**
+     * @param file         attachment, or null; the head must then be open
+     *                     inside the attachment content string
+     * @param cachedBase64 the file's base64 if already in memory, else null
+     */
+    public BrevoRequestBody(BrevoPayloadBuilder.Buffer head, File file, String cachedBase64) {
+        this.head = head;
+        this.file = file;
+        this.cachedBase64 = cachedBase64;
+        this.fileSize = file != null ? file.length() : 0;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public long contentLength() {
+        if (file == null) return head.length() + CLOSE.length;
+        return head.length() + 4 * ((fileSize + 2) / 3) + CLOSE_ATTACHMENT.length;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        sink.write(head.array(), 0, head.length());
+
+        if (file == null) {
+            sink.write(CLOSE);
+            return;
+        }
+
+        if (cachedBase64 != null) {
+            sink.writeUtf8(cachedBase64);
+        } else {
+            writeBase64(sink);
+        }
+        sink.write(CLOSE_ATTACHMENT);
+    }
+
+    private void writeBase64(BufferedSink sink) throws IOException {
+        Base64.Encoder encoder = Base64.getEncoder();
+        byte[] in = new byte[CHUNK];
+        byte[] out = new byte[CHUNK / 3 * 4];
+        ByteBuffer buf = ByteBuffer.wrap(in);
+
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (true) {
+                // Fill a whole chunk so only the last one can need padding
+                buf.clear();
+                while (buf.hasRemaining() && ch.read(buf) >= 0) {
+                    // keep reading
+                }
+                int n = buf.position();
+                if (n == 0) break;
+
+                int len = n == CHUNK
+                        ? encoder.encode(in, out)
+                        : encoder.encode(Arrays.copyOf(in, n), out);
+                sink.write(out, 0, len);
+
+                if (n < CHUNK) break;
+            }
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package com.sendmail.service;
+
+import com.sendmail.AttachmentCache;
+import com.sendmail.job.JobStatus;
+import okhttp3.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivery through the Brevo HTTP API; batches go out as one call
+ * with {@code messageVersions}.
+ *
+ * Async sends are enqueued on OkHttp's dispatcher and complete a future
+ * from its callback; at most max-in-flight across all jobs. Each call
+ * holds a dispatcher thread while it runs, a stalled upload included:
+ * write-timeout-ms bounds one blocked write of the body, and the call
+ * timeout the whole call. The connection pool keeps that many
+ * connections alive between calls, and HTTP/2 is negotiated (ALPN) where
+ * the endpoint offers it, multiplexing the calls over one connection.
+ */
+@Component
+public class BrevoTransport implements MailTransport {
+
+    @Value("${BREVO_API_KEY:}")
+    private String apiKey;
+
+    @Value("${MAIL_FROM}")
+    private String fromEmail;
+
+    @Value("${sendmail.ratelimit.rate:5}")
+    private double rate;
+
+    @Value("${sendmail.ratelimit.burst:10}")
+    private int burst;
+
+    @Value("${sendmail.ratelimit.min-rate:0.5}")
+    private double minRate;
+
+    @Value("${sendmail.ratelimit.increase-step:0.05}")
+    private double increaseStep;
+
+    @Value("${sendmail.ratelimit.decrease-factor:0.5}")
+    private double decreaseFactor;
+
+    @Value("${sendmail.ratelimit.max-throttle-retries:3}")
+    private int maxThrottleRetries;
+
+    @Autowired
+    private AttachmentCache attachmentCache;
+
+    @Value("${sendmail.brevo.url:https://api.brevo.com/v3/smtp/email}")
+    private String brevoUrl;
+
+    @Value("${sendmail.brevo.max-in-flight:64}")
+    private int maxInFlight;
+
+    @Value("${sendmail.brevo.max-idle-connections:64}")
+    private int maxIdleConnections;
+
+    @Value("${sendmail.brevo.keep-alive-seconds:300}")
+    private long keepAliveSeconds;
+
+    @Value("${sendmail.brevo.http2:true}")
+    private boolean http2;
+
+    @Value("${sendmail.brevo.write-timeout-ms:10000}")
+    private long writeTimeoutMs;
+
+    private SendRateLimiter rateLimiter;
+    private BrevoPayloadBuilder payloads;
+    private OkHttpClient client;
+
+    // Async calls in flight, all jobs together
+    private Semaphore inFlight;
+
+    // Throttled async calls wait here for their retry, not on a dispatcher thread
+    private final ScheduledExecutorService retryScheduler =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "BrevoRetry");
+                t.setDaemon(true);
+                return t;
+            });
+
+    @PostConstruct
+    void init() {
+        rateLimiter = new SendRateLimiter(rate, burst, minRate, increaseStep, decreaseFactor);
+        payloads = new BrevoPayloadBuilder(fromEmail);
+
+        int window = Math.max(1, maxInFlight);
+        inFlight = new Semaphore(window);
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(window);
+        dispatcher.setMaxRequestsPerHost(window);
+
+        client = new OkHttpClient.Builder()
+                .callTimeout(java.time.Duration.ofSeconds(30))
+                .writeTimeout(writeTimeoutMs, TimeUnit.MILLISECONDS)
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(
+                        Math.max(1, maxIdleConnections), keepAliveSeconds, TimeUnit.SECONDS))
+                .protocols(http2
+                        ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : List.of(Protocol.HTTP_1_1))
+                .build();
+    }
+
+    @PreDestroy
+    void close() {
+        retryScheduler.shutdownNow();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    @Override
+    public String name() {
+        return "brevo";
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return apiKey != null && !apiKey.isBlank() && fromEmail != null && !fromEmail.isBlank();
+    }
+
+    @Override
+    public SendRateLimiter rateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sends a single email using Brevo HTTP API.
+     * Every call goes through the shared rate limiter; throttled answers
+     * (429/5xx) are retried after the limiter has backed off. Cancelling
+     * the job aborts the HTTP call in flight and stops further retries.
+     */
+    @Override
+    public void send(PersonalizedMessage message, JobStatus job) throws Exception {
+
+        checkConfig();
+
+        File file = usable(message.attachment());
+        BrevoPayloadBuilder.Buffer payload = payloads.single(message.to(), message.subject(),
+                message.htmlBody(), file != null ? file.getName() : null);
+        try {
+            Request request = jsonRequest(payload, file);
+
+            for (int attempt = 0; ; attempt++) {
+                rateLimiter.acquire();
+                checkCancelled(job);
+                try {
+                    execute(request, job);
+                    rateLimiter.onSuccess();
+                    return;
+                } catch (BrevoApiException e) {
+                    if (!e.isThrottle()) throw e;
+
+                    rateLimiter.onThrottle(e.getRetryAfterMillis());
+                    if (attempt >= maxThrottleRetries) throw e;
+                }
+            }
+        } finally {
+            payloads.release(payload);
+        }
+    }
+    /**
+     * Enqueues the call and returns; waits only for a rate-limit token and
+     * a slot in the in-flight window. Throttled answers are retried from
+     * the callback once the limiter allows, without holding a thread.
+     * Cancelling the job aborts the call.
+     */
+    @Override
+    public CompletableFuture<Void> sendAsync(PersonalizedMessage message, JobStatus job)
+            throws Exception {
+
+        checkConfig();
+
+        File file = usable(message.attachment());
+        BrevoPayloadBuilder.Buffer payload = payloads.single(message.to(), message.subject(),
+                message.htmlBody(), file != null ? file.getName() : null);
+        boolean started = false;
+        try {
+            Request request = jsonRequest(payload, file);
+
+            while (!inFlight.tryAcquire(250, TimeUnit.MILLISECONDS)) checkCancelled(job);
+            try {
+                rateLimiter.acquire();
+                checkCancelled(job);
+
+                AsyncCall call = new AsyncCall(request, payload, job);
+                started = true;
+                call.start();
+                return call.future;
+            } finally {
+                if (!started) inFlight.release();
+            }
+        } finally {
+            if (!started) payloads.release(payload);
+        }
+    }
+
+    /**
+     * Sends several personalized messages in one Brevo call using
+     * {@code messageVersions}. If Brevo rejects the whole request, each
+     * message is re-sent alone so the bad ones are pinned down.
+     */
+    @Override
+    public List<Exception> sendBatch(List<PersonalizedMessage> messages, JobStatus job)
+            throws Exception {
+
+        if (messages.isEmpty()) return List.of();
+        if (messages.size() == 1) {
+            return sendEach(messages, job);
+        }
+
+        checkConfig();
+
+        File file = usable(messages.get(0).attachment());
+        BrevoPayloadBuilder.Buffer payload = payloads.batch(
+                messages, file != null ? file.getName() : null);
+        try {
+            Request request = jsonRequest(payload, file);
+
+            for (int attempt = 0; ; attempt++) {
+                rateLimiter.acquire(messages.size());
+                checkCancelled(job);
+                try {
+                    execute(request, job);
+                    rateLimiter.onSuccess();
+                    return Arrays.asList(new Exception[messages.size()]);
+                } catch (BrevoApiException e) {
+                    if (!e.isThrottle()) {
+                        // Whole batch rejected: find the offending rows one by one
+                        return sendEach(messages, job);
+                    }
+
+                    rateLimiter.onThrottle(e.getRetryAfterMillis());
+                    if (attempt >= maxThrottleRetries) {
+                        return Collections.nCopies(messages.size(), e);
+                    }
+                }
+            }
+        } finally {
+            payloads.release(payload);
+        }
+    }
+
+    private List<Exception> sendEach(List<PersonalizedMessage> messages, JobStatus job)
+            throws InterruptedException {
+        List<Exception> results = new ArrayList<>(messages.size());
+        for (PersonalizedMessage m : messages) {
+            try {
+                send(m, job);
+                results.add(null);
+            } catch (InterruptedException ie) {
+                throw ie;
+            } catch (Exception e) {
+                results.add(e);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Builds the POST around a built payload; the attachment, if any, is
+     * streamed into it when the request is written.
+     */
+    private Request jsonRequest(BrevoPayloadBuilder.Buffer payload, File attachment)
+            throws Exception {
+
+        RequestBody body = new BrevoRequestBody(
+                payload,
+                attachment,
+                attachment != null ? attachmentCache.cachedBase64(attachment) : null
+        );
+
+        return new Request.Builder()
+                .url(brevoUrl)
+                .post(body)
+                .addHeader("api-key", apiKey)
+                .addHeader("Content-Type", "application/json")
+                .build();
+    }
+
+    private void execute(Request request, JobStatus job) throws Exception {
+        Call call = client.newCall(request);
+        JobStatus.Registration abort = job != null ? job.onCancel(call::cancel) : null;
+
+        try (Response response = call.execute()) {
+
+            if (!response.isSuccessful()) {
+                String body = response.body() != null
+                        ? response.body().string()
+                        : "no response body";
+
+                throw new BrevoApiException(
+                        response.code(),
+                        body,
+                        retryAfterMillis(response.header("Retry-After"))
+                );
+            }
+        } finally {
+            if (abort != null) abort.close();
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return Map.of(
+                "url", brevoUrl,
+                "http2", http2,
+                "maxInFlight", Math.max(1, maxInFlight),
+                "inFlight", Math.max(1, maxInFlight) - inFlight.availablePermits(),
+                "connections", client.connectionPool().connectionCount(),
+                "idleConnections", client.connectionPool().idleConnectionCount()
+        );
+    }
+
+    // ================== Inner Class ==================
+
+    /**
+     * One async send: the call, its throttle retries, and the future the
+     * caller waits on. Holds one in-flight slot and the payload buffer
+     * until it completes.
+     */
+    private final class AsyncCall implements Callback {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final Request request;
+        private final BrevoPayloadBuilder.Buffer payload;
+        private final JobStatus job;
+        private int attempt;
+        private JobStatus.Registration abort;
+
+        AsyncCall(Request request, BrevoPayloadBuilder.Buffer payload, JobStatus job) {
+            this.request = request;
+            this.payload = payload;
+            this.job = job;
+        }
+
+        void start() {
+            Call call = client.newCall(request);
+            abort = job != null ? job.onCancel(call::cancel) : null;
+            call.enqueue(this);
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            finish(e);
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            BrevoApiException error;
+            try (response) {
+                if (response.isSuccessful()) {
+                    rateLimiter.onSuccess();
+                    finish(null);
+                    return;
+                }
+                error = new BrevoApiException(
+                        response.code(),
+                        response.body() != null ? response.body().string() : "no response body",
+                        retryAfterMillis(response.header("Retry-After"))
+                );
+            } catch (IOException e) {
+                finish(e);
+                return;
+            }
+
+            if (!error.isThrottle()) {
+                finish(error);
+                return;
+            }
+            rateLimiter.onThrottle(error.getRetryAfterMillis());
+            if (attempt++ >= maxThrottleRetries) {
+                finish(error);
+                return;
+            }
+            closeAbort();
+            retry();
+        }
+
+        /** Goes again once the limiter hands out a token. */
+        private void retry() {
+            if (job != null && job.cancelRequested()) {
+                finish(new CancellationException("Job cancelled"));
+                return;
+            }
+            try {
+                long waitNanos = rateLimiter.tryAcquire();
+                if (waitNanos > 0) {
+                    retryScheduler.schedule(this::retry, waitNanos, TimeUnit.NANOSECONDS);
+                } else {
+                    start();
+                }
+            } catch (RuntimeException e) {
+                finish(e); // shutting down
+            }
+        }
+
+        private void finish(Exception e) {
+            closeAbort();
+            payloads.release(payload);
+            inFlight.release();
+            if (e == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(e);
+            }
+        }
+
+        private void closeAbort() {
+            if (abort != null) abort.close();
+            abort = null;
+        }
+    }
+
+    // ---------------- HELPERS ----------------
+
+    private void checkConfig() {
+        if (apiKey == null || apiKey.isBlank()) {
+            throw new IllegalStateException("BREVO_API_KEY is missing");
+        }
+
+        if (fromEmail == null || fromEmail.isBlank()) {
+            throw new IllegalStateException("MAIL_FROM is missing");
+        }
+    }
+
+    private static void checkCancelled(JobStatus job) {
+        if (job != null && job.cancelRequested()) {
+            throw new CancellationException("Job cancelled");
+        }
+    }
+
+    private static File usable(File attachment) {
+        return attachment != null && attachment.exists() && attachment.length() > 0
+                ? attachment
+                : null;
+    }
+
+    /**
+     * Retry-After is either delta-seconds or an HTTP date. -1 if absent/unparseable.
+     */
+    static long retryAfterMillis(String header) {
+        if (header == null || header.isBlank()) return -1;
+        try {
+            return Long.parseLong(header.trim()) * 1000;
+        } catch (NumberFormatException ignored) {
+            // not seconds, try a date
+        }
+        try {
+            ZonedDateTime at = ZonedDateTime.parse(header.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, at.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException ignored) {
+            return -1;
+        }
+    }
+}
@@ -2,24 +2,59 @@ package com.sendmail.service;
 
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.sendmail.job.FailureClass;
+import com.sendmail.job.JobJournal;
+import com.sendmail.job.JobState;
 import com.sendmail.job.JobStatusStore;
 import com.sendmail.job.JobStatus;
-import com.sendmail.AttachmentDownloader;
-import com.sendmail.util.EmailTemplateUtil;
+import com.sendmail.AttachmentCache;
+import com.sendmail.ingest.ColumnMapping;
+import com.sendmail.ingest.RecipientRow;
+import com.sendmail.ingest.SheetPreview;
+import com.sendmail.ingest.RecipientSource;
+import com.sendmail.ingest.SourceFormat;
+import com.sendmail.pipeline.RetryQueue;
+import com.sendmail.pipeline.RowTask;
+import com.sendmail.pipeline.StagedPipeline;
+import com.sendmail.suppression.SuppressionList;
+import com.sendmail.util.CompiledTemplate;
+import com.sendmail.writeback.ExcelWriteBackService;
 
 
 @Service
 public class EmailAsyncService {
 
+    private static final Logger log = LoggerFactory.getLogger(EmailAsyncService.class);
+
     @Autowired
     private EmailService emailService;
 
@@ -29,183 +64,864 @@ public class EmailAsyncService {
     @Autowired
     private SseEmitterService sseEmitterService;
 
-    private static final int STATUS_COL = 7; // Column after driveLink
+    @Autowired
+    private ExcelWriteBackService writeBack;
+
+    @Autowired
+    private TemplateService templateService;
+
+    @Autowired
+    private AttachmentCache attachmentCache;
+
+    @Autowired
+    private SuppressionList suppressionList;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @Autowired
+    @Qualifier("pipelineExecutor")
+    private Executor pipelineExecutor;
+
+    @Value("${sendmail.ingest.streaming:true}")
+    private boolean streamingIngest;
+
+    @Value("${sendmail.pipeline.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${sendmail.pipeline.fetch-workers:4}")
+    private int fetchWorkers;
+
+    @Value("${sendmail.pipeline.render-workers:1}")
+    private int renderWorkers;
+
+    @Value("${sendmail.pipeline.send-workers:4}")
+    private int sendWorkers;
+
+    @Value("${sendmail.pipeline.commit-workers:1}")
+    private int commitWorkers;
+
+    @Value("${sendmail.pipeline.async-send:false}")
+    private boolean asyncSend;
+
+    @Value("${sendmail.pipeline.async-window:32}")
+    private int asyncWindow;
+
+    @Value("${sendmail.batch.enabled:false}")
+    private boolean batchEnabled;
+
+    @Value("${sendmail.batch.size:50}")
+    private int batchSize;
+
+    @Value("${sendmail.batch.linger-ms:200}")
+    private long batchLingerMs;
+
+    @Value("${sendmail.retry.max-attempts:3}")
+    private int retryMaxAttempts;
+
+    @Value("${sendmail.retry.base-delay-ms:1000}")
+    private long retryBaseDelayMs;
+
+    @Value("${sendmail.retry.max-delay-ms:60000}")
+    private long retryMaxDelayMs;
+
+    private static final long SUBMIT_CHECK_MS = 250;
+
+    // Jobs that have not finished yet, including paused ones without a thread
+    private final Map<String, JobRun> runs = new ConcurrentHashMap<>();
 
     @Async
     public void processEmailsAsync(File excelFile, String jobId) {
 
-        try (Workbook workbook = new XSSFWorkbook(new FileInputStream(excelFile))) {
+        writeBack.open(jobId, excelFile);
+        JobRun run = new JobRun(jobId, excelFile);
+        runs.put(jobId, run);
 
-            Sheet sheet = workbook.getSheetAt(0);
-            ensureStatusHeader(sheet); // add status column
-            int totalRows = countDataRows(sheet);
+        runJob(run);
+    }
 
-            if (totalRows == 0) {
-                complete(jobId, "No rows with data");
-                return;
+    /**
+     * Re-sends the failed rows of a finished job, as the same job: rows
+     * come from the job's row table (the workbook is not read again),
+     * statuses and the SSE stream are updated in place. Rows failed for
+     * a permanent cause, or possibly delivered before a crash, are left
+     * alone. A row failing again for a transient cause is re-queued with
+     * exponential backoff, up to retry.max-attempts sends.
+     *
+     * Returns the number of rows queued, or -1 if the job is not finished.
+     */
+    public int retryFailed(String jobId) {
+        JobStatus job = jobStatusStore.getJob(jobId);
+        if (job == null || job.getState() != JobState.DONE || runs.containsKey(jobId)) return -1;
+
+        List<JobStatus.RowStatus> rows = new ArrayList<>();
+        for (JobStatus.RowStatus r : job.failedRows()) {
+            if (JobStatusStore.IN_DOUBT.equals(r.getStatus())) continue;
+            if (FailureClass.of(r.getStatus()).isPermanent()) continue;
+            rows.add(r);
+        }
+        if (rows.isEmpty()) return 0;
+        if (!job.reopen()) return -1; // concurrent retry won
+
+        jobStatusStore.reopen(jobId);
+        jobStatusStore.journal(jobId).state(JobState.RUNNING);
+        sseEmitterService.reopen(jobId);
+        sseEmitterService.sendControl(jobId, "RETRYING");
+
+        File excelFile = jobStatusStore.getExcel(jobId);
+        if (excelFile != null && excelFile.exists()) {
+            writeBack.open(jobId, excelFile); // checkpoint appends; result is re-exported at the end
+        }
+
+        JobRun run = new JobRun(jobId, excelFile);
+        run.retryRows = rows;
+        runs.put(jobId, run);
+        taskExecutor.execute(() -> runJob(run));
+        return rows.size();
+    }
+
+    /**
+     * Picks up the jobs a restart interrupted, from their journal: rows
+     * with an outcome are skipped, rows possibly sent were already settled
+     * as in doubt by the store, the rest are sent as usual.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeRecoveredJobs() {
+        for (String jobId : jobStatusStore.unfinishedJobs()) {
+            File excelFile = jobStatusStore.getExcel(jobId);
+            JobRun run = new JobRun(jobId, excelFile);
+            run.processed.set(run.job.getRowCount());
+            runs.put(jobId, run);
+
+            if (excelFile == null || !excelFile.exists()) {
+                taskExecutor.execute(() -> finishRun(run, "Error: upload lost in restart"));
+                continue;
             }
 
-            int processed = 0;
-            JobStatus job = jobStatusStore.getJob(jobId);
+            log.info("Resuming job {} after restart", jobId);
+            writeBack.open(jobId, excelFile);
+            taskExecutor.execute(() -> runJob(run));
+        }
+    }
 
-            for (int i = 1; i <= sheet.getLastRowNum(); i++) {
+    /**
+     * Runs (or continues) the parse stage on the calling job thread.
+     * A pause hands the thread back to the executor; resume() or cancel()
+     * schedules a fresh call that picks up after the last submitted row.
+     */
+    private void runJob(JobRun run) {
+
+        String message;
+        try {
+            if (run.job.cancelRequested()) throw new CancellationException("Job cancelled");
+
+            if (run.retryRows != null) {
+                ingestRetry(run);
+            } else {
+                if (run.mapping == null) run.mapping = resolveColumns(run);
+                if (streamingIngest || SourceFormat.of(run.excelFile.getName()) != SourceFormat.XLSX) {
+                    ingestStreaming(run);
+                } else {
+                    ingestInMemory(run);
+                }
+            }
+            message = run.totalRows == 0 ? "No rows with data" : "Completed";
+        } catch (JobYield y) {
+            return; // paused: pipeline stays up, no thread is held for the parse stage
+        } catch (CancellationException e) {
+            message = "Cancelled";
+        } catch (Exception e) {
+            message = "Error: " + e.getMessage();
+        }
+
+        finishRun(run, message);
+    }
+
+    private void finishRun(JobRun run, String message) {
+        try {
+            // Rows already handed over are still sent (or cancelled) and committed
+            run.drain();
+        } finally {
+            attachmentCache.releaseJob(run.jobId);
+        }
+
+        // Final checkpoint + result workbook before clients are told we're done
+        writeBack.finish(run.jobId);
+        run.journal.ended(message);
+
+        if ("Completed".equals(message)) {
+            publishFinalProgress(run.jobId);
+        }
+        run.job.markDone();
+        jobStatusStore.markFinished(run.jobId);
+        complete(run.jobId, message);
+
+        // Last: a retry can only start once the completion is queued
+        runs.remove(run.jobId, run);
+    }
+
+    // ---------------- JOB CONTROL ----------------
 
-                // -------- Pause handling --------
-                while (job != null && job.isPaused()) {
-                    sseEmitterService.sendControl(jobId, "PAUSED");
-                    Thread.sleep(300);
+    public boolean pause(String jobId) {
+        JobStatus job = jobStatusStore.getJob(jobId);
+        if (job == null || !job.pause()) return false;
+
+        jobStatusStore.journal(jobId).state(JobState.PAUSED);
+        return true;
+    }
+
+    /**
+     * PAUSED -> RUNNING. If the executor rejects the job's new parse
+     * thread the job is paused again and the RejectedExecutionException
+     * is rethrown, so resume can simply be retried.
+     */
+    public boolean resume(String jobId) {
+        JobStatus job = jobStatusStore.getJob(jobId);
+        if (job == null || !job.resume()) return false;
+
+        jobStatusStore.journal(jobId).state(JobState.RUNNING);
+        try {
+            reattach(jobId);
+        } catch (RejectedExecutionException e) {
+            if (job.pause()) jobStatusStore.journal(jobId).state(JobState.PAUSED);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Stops reading new rows, fails nothing that was already sent, marks
+     * queued rows CANCELLED and aborts HTTP calls in flight. A cancel
+     * whose parse thread the executor rejected stays CANCELLING and
+     * throws; calling cancel again retries the hand-off.
+     */
+    public boolean cancel(String jobId) {
+        JobStatus job = jobStatusStore.getJob(jobId);
+        if (job == null) return false;
+
+        if (job.cancel()) {
+            jobStatusStore.journal(jobId).state(JobState.CANCELLING);
+        } else {
+            JobRun run = runs.get(jobId);
+            if (!job.cancelRequested() || run == null || !run.detached.get()) return false;
+        }
+        reattach(jobId);
+        return true;
+    }
+
+    /**
+     * Gives a paused job whose parse stage yielded its thread a new one.
+     * On RejectedExecutionException the job is left detached, so a later
+     * call can hand it over again.
+     */
+    private void reattach(String jobId) {
+        JobRun run = runs.get(jobId);
+        if (run != null && run.detached.compareAndSet(true, false)) {
+            try {
+                taskExecutor.execute(() -> runJob(run));
+            } catch (RejectedExecutionException e) {
+                run.detached.set(true);
+                throw e;
+            }
+        }
+    }
+
+    // ---------------- PARSE STAGE ----------------
+
+    /**
+     * The columns chosen at upload, else detected from the sheet's header
+     * and first rows (a read that stops after the sample) and kept with
+     * the job, so a resumed job reads the same columns.
+     */
+    private ColumnMapping resolveColumns(JobRun run) throws Exception {
+        ColumnMapping mapping = jobStatusStore.getColumns(run.jobId);
+        if (mapping != null) return mapping;
+
+        mapping = SheetPreview.read(run.excelFile, false).getMapping();
+        log.info("Job {} columns detected: {}", run.jobId, mapping);
+        jobStatusStore.registerColumns(run.jobId, mapping);
+        return mapping;
+    }
+
+    /**
+     * Reads the upload as a stream (XSSF event model, CSV or NDJSON
+     * parser): rows enter the pipeline as they are parsed and the
+     * workbook DOM is never built. Rows are not counted up front: sending
+     * starts at once, the total is published when the read ends, and
+     * progress follows the source's estimate until then.
+     */
+    private void ingestStreaming(JobRun run) throws Exception {
+
+        try (RecipientSource reader = RecipientSource.open(run.excelFile)) {
+
+            if (!run.started) {
+                run.estimatedRows = reader.estimatedDataRows();
+                run.begin(run.job.getTotalRows()); // known already if a restart resumes the job
+            }
+            if (run.totalRows == 0) return;
+
+            // Counted afresh on every pass (a resumed pass re-reads from the top)
+            int[] dataRows = {0};
+            reader.read((rowNum, cells) -> {
+                if (rowNum == 0) {
+                    run.setHeader(cells);
+                    return;
                 }
 
+                dataRows[0]++;
+                run.submit(new RecipientRow(
+                        rowNum,
+                        cell(cells, run.mapping.email()),
+                        cell(cells, run.mapping.name()),
+                        normalizeDriveLink(cell(cells, run.mapping.link())),
+                        cells
+                ));
+            });
+            if (run.totalRows < 0) run.total(dataRows[0]);
+        }
+    }
+
+    private void ingestInMemory(JobRun run) throws Exception {
+
+        try (Workbook workbook = new XSSFWorkbook(new FileInputStream(run.excelFile))) {
+
+            Sheet sheet = workbook.getSheetAt(0);
+            if (!run.started) run.begin(countDataRows(sheet));
+            if (run.totalRows == 0) return;
+
+            Row header = sheet.getRow(0);
+            if (header != null) run.setHeader(rowCells(header));
+
+            for (int i = 1; i <= sheet.getLastRowNum(); i++) {
+
                 Row row = sheet.getRow(i);
                 if (row == null || isRowEmpty(row)) {
                     continue;
                 }
 
-                // as per excel file - start
-                String name = getCellString(row.getCell(5)); //flat no
-                String email = getCellString(row.getCell(1)); //receipent email address
-                String rawDriveLink = getCellString(row.getCell(6)); //attachment path
-                // -end
-               // String email = getCellString(row.getCell(0));
-                //String name = getCellString(row.getCell(1));
-                //String rawDriveLink = getCellString(row.getCell(2));
-                String driveLink = normalizeDriveLink(rawDriveLink);
-
-                // -------- Mark PROCESSING --------
-                jobStatusStore.addOrUpdateRow(
-                        jobId,
-                        i,
-                        email,
-                        name,
-                        driveLink,
-                        "PROCESSING"
-                );
-
-                sseEmitterService.sendRow(
-                        jobId,
-                        jobStatusStore.getRow(jobId, i)
-                );
+                String[] cells = rowCells(row);
+                String name = cell(cells, run.mapping.name());
+                String email = cell(cells, run.mapping.email());
+                String driveLink = normalizeDriveLink(cell(cells, run.mapping.link()));
 
-                try {
-                    File attachment = null;
-                    if (driveLink != null && !driveLink.isBlank()) {
-                        attachment = AttachmentDownloader.download(driveLink);
-                    }
-
-                    //load subject and body from template
-                    String subject = EmailTemplateUtil.load(
-                        "subject.txt",
-                        Map.of()
-                    );
+                run.submit(new RecipientRow(i, email, name, driveLink, cells));
+            }
+        }
+    }
 
-                    String body = EmailTemplateUtil.load(
-                        "email.html",
-                        Map.of("name", name)
-                    );
-                    // end
+    /**
+     * Retry mode: feeds the failed rows, then whatever the commit stage
+     * re-queues, until every row has a final outcome.
+     */
+    private void ingestRetry(JobRun run) throws Exception {
+        if (!run.started) {
+            run.retries = new RetryQueue<>(retryBaseDelayMs, retryMaxDelayMs);
+            for (JobStatus.RowStatus r : run.retryRows) {
+                run.retries.add(new RecipientRow(
+                        r.getRow(), r.getEmail(), r.getName(), r.getDriveLink(), new String[0]));
+            }
+            run.begin(run.retryRows.size());
+        }
 
-                    emailService.sendMail(email, subject, body, attachment);
+        while (!run.retries.isFinished()) {
+            run.checkState();
+            RetryQueue.Attempt<RecipientRow> next = run.retries.poll(SUBMIT_CHECK_MS);
+            if (next == null) continue;
 
-                    updateExcelStatus(workbook, sheet, i, "SENT");
+            try {
+                run.offer(new RowTask(next.item(), next.attempt()));
+            } catch (RuntimeException e) {
+                run.retries.putBack(next); // paused or cancelled before it was handed over
+                throw e;
+            }
+        }
+    }
 
-                    jobStatusStore.updateRowStatus(jobId, i, "SENT");
+    // ---------------- PIPELINE STAGES ----------------
+
+    private StagedPipeline<RowTask> newPipeline(JobRun run) {
+        StagedPipeline<RowTask> pipeline =
+                new StagedPipeline<RowTask>(pipelineExecutor, queueCapacity,
+                        (task, e) -> failOrCancel(run, task, e))
+                        .stage(fetchWorkers, task -> fetchAttachment(run, task))
+                        .stage(renderWorkers, task -> render(run, task));
+
+        if (batchEnabled) {
+            pipeline.batchStage(sendWorkers, batchSize, batchLingerMs,
+                    tasks -> sendBatch(run, tasks));
+        } else if (asyncSend) {
+            pipeline.asyncStage(sendWorkers, Math.max(1, asyncWindow),
+                    tasks -> sendAsync(run, tasks));
+        } else {
+            pipeline.stage(sendWorkers, task -> send(run, task));
+        }
 
-                } catch (Exception ex) {
-                    String err = ex.getMessage();
-                    updateExcelStatus(workbook, sheet, i, "FAILED: " + err);
+        return pipeline.stage(commitWorkers, task -> commit(run, task));
+    }
 
-                    jobStatusStore.updateRowStatus(
-                            jobId,
-                            i,
-                            "FAILED: " + ex.getMessage()
-                    );
-                }
+    private void fetchAttachment(JobRun run, RowTask task) throws Exception {
+        if (skip(run, task)) return;
 
-                try (FileOutputStream fos = new FileOutputStream(excelFile)) {
-                    workbook.write(fos);
-                }
+        RecipientRow r = task.getRecipient();
 
-                // -------- Push updated row --------
-                sseEmitterService.sendRow(
-                        jobId,
-                        jobStatusStore.getRow(jobId, i)
-                );
+        // -------- Mark PROCESSING --------
+        jobStatusStore.addOrUpdateRow(
+                run.jobId,
+                r.row(),
+                r.email(),
+                r.name(),
+                r.driveLink(),
+                "PROCESSING"
+        );
 
-                processed++;
-                int progress = (processed * 100) / totalRows;
-                jobStatusStore.setProgress(jobId, progress);
+        sseEmitterService.sendRow(
+                run.jobId,
+                jobStatusStore.getRow(run.jobId, r.row())
+        );
 
-                sseEmitterService.sendEvent(
-                        jobId,
-                        "progress",
-                        Map.of("progress", progress)
-                );
+        // -------- Suppressed address: no download, no send --------
+        if (suppressionList.contains(r.email())) {
+            task.setStatus(SuppressionList.STATUS);
+            return;
+        }
 
-                Thread.sleep(200); // throttle
+        if (r.driveLink() != null && !r.driveLink().isBlank()) {
+            long start = System.nanoTime();
+            try {
+                task.setAttachment(attachmentCache.get(run.jobId, r.driveLink()));
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Attachment download failed: " + e.getMessage(), e);
+            } finally {
+                run.job.recordDownload(System.nanoTime() - start);
             }
+        }
+    }
 
-            // -------- Final completion --------
-            jobStatusStore.setProgress(jobId, 100);
-            sseEmitterService.sendEvent(
-                    jobId,
-                    "progress",
-                    Map.of("progress", 100)
-            );
-            complete(jobId, "Completed");
+    private void render(JobRun run, RowTask task) throws Exception {
+        if (skip(run, task)) return;
 
+        RecipientRow r = task.getRecipient();
+        Function<String, String> vars = key -> variable(run, r, key);
+
+        try {
+            task.setContent(
+                    templateService.render("subject.txt", vars),
+                    templateService.render("email.html", vars)
+            );
         } catch (Exception e) {
-            complete(jobId, "Error: " + e.getMessage());
+            throw new IllegalStateException("Template error: " + e.getMessage(), e);
         }
     }
 
-    // ---------------- HELPERS ----------------
+    /**
+     * Template variables: name/email/driveLink/row as mapped for sending,
+     * then any sheet column by its header text.
+     */
+    private String variable(JobRun run, RecipientRow r, String key) {
+        switch (key) {
+            case "name": return r.name();
+            case "email": return r.email();
+            case "drivelink": return r.driveLink();
+            case "row": return String.valueOf(r.row());
+            default:
+                Integer col = run.columns.get(key);
+                return col != null ? cell(r.cells(), col) : null;
+        }
+    }
+
+    private void send(JobRun run, RowTask task) throws Exception {
+        if (skip(run, task)) return;
+
+        // On disk before the call goes out, so a restart never sends it again
+        run.journal.dispatch(run.job.getRow(task.getRecipient().row()));
+
+        long start = System.nanoTime();
+        try {
+            emailService.sendMail(
+                    task.getRecipient().email(),
+                    task.getSubject(),
+                    task.getBody(),
+                    task.getAttachment(),
+                    run.job
+            );
+        } finally {
+            run.job.recordSend(System.nanoTime() - start);
+        }
+        task.setStatus("SENT");
+    }
+
+    /**
+     * Async mode: rows are journaled (one fsync per group) and their sends
+     * started without waiting; each row moves on to commit when its own
+     * send completes. At most async-window sends per job are in flight.
+     */
+    private List<CompletableFuture<Void>> sendAsync(JobRun run, List<RowTask> tasks)
+            throws Exception {
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>(Collections.nCopies(tasks.size(), null));
+        List<Integer> group = new ArrayList<>(tasks.size());
+
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                RowTask task = tasks.get(i);
+                if (skip(run, task)) continue;
+
+                if (!run.window.tryAcquire()) {
+                    // Never wait for a slot while holding slots of rows not started yet
+                    startSends(run, tasks, group, futures);
+                    if (!acquireWindow(run, task)) continue;
+                }
+                group.add(i);
+            }
+            startSends(run, tasks, group, futures);
+        } finally {
+            // Interrupted with slots taken for rows that never started
+            if (!group.isEmpty()) {
+                run.window.release(group.size());
+                group.clear();
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * Journals the grouped rows, then starts their sends; empties the group.
+     * Each started send gives its window slot back when it completes; slots
+     * of rows that could not be started are given back here.
+     */
+    private void startSends(JobRun run, List<RowTask> tasks, List<Integer> group,
+                            List<CompletableFuture<Void>> futures) throws InterruptedException {
+        if (group.isEmpty()) return;
+
+        int started = 0;
+        try {
+            List<JobStatus.RowStatus> dispatched = new ArrayList<>(group.size());
+            for (int i : group) dispatched.add(run.job.getRow(tasks.get(i).getRecipient().row()));
+
+            // On disk before the calls go out, so a restart never sends them again
+            try {
+                run.journal.dispatch(dispatched);
+            } catch (Exception e) {
+                for (int i : group) failOrCancel(run, tasks.get(i), e);
+                return;
+            }
+
+            for (int i : group) {
+                RowTask task = tasks.get(i);
+                long start = System.nanoTime();
+                CompletableFuture<Void> sent;
+                try {
+                    sent = emailService.sendMailAsync(
+                            task.getRecipient().email(),
+                            task.getSubject(),
+                            task.getBody(),
+                            task.getAttachment(),
+                            run.job
+                    );
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    sent = CompletableFuture.failedFuture(e);
+                }
+                started++;
+
+                futures.set(i, sent.whenComplete((v, ex) -> {
+                    run.window.release();
+                    run.job.recordSend(System.nanoTime() - start);
+                    if (ex == null) task.setStatus("SENT");
+                }));
+            }
+        } finally {
+            if (started < group.size()) run.window.release(group.size() - started);
+            group.clear();
+        }
+    }
+
+    /** Waits for a free slot in the job's window; false if cancelled meanwhile. */
+    private boolean acquireWindow(JobRun run, RowTask task) throws InterruptedException {
+        while (!run.window.tryAcquire(SUBMIT_CHECK_MS, TimeUnit.MILLISECONDS)) {
+            if (run.job.cancelRequested()) {
+                task.cancel();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Batch mode: rows sharing subject and attachment go out together
+     * (one Brevo call, or one SMTP session); each row gets its own outcome back.
+     */
+    private void sendBatch(JobRun run, List<RowTask> tasks) throws Exception {
+        Map<String, List<RowTask>> groups = new LinkedHashMap<>();
+        for (RowTask task : tasks) {
+            if (skip(run, task)) continue;
+            String key = task.getSubject() + '\u0000' + task.getRecipient().driveLink();
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(task);
+        }
+
+        for (List<RowTask> group : groups.values()) {
+            File attachment = group.get(0).getAttachment();
+
+            List<JobStatus.RowStatus> dispatched = new ArrayList<>(group.size());
+            for (RowTask task : group) {
+                dispatched.add(run.job.getRow(task.getRecipient().row()));
+            }
+            try {
+                run.journal.dispatch(dispatched);
+            } catch (Exception e) {
+                for (RowTask task : group) failOrCancel(run, task, e);
+                continue;
+            }
+
+            List<PersonalizedMessage> messages = new ArrayList<>(group.size());
+            for (RowTask task : group) {
+                messages.add(new PersonalizedMessage(
+                        task.getRecipient().email(),
+                        task.getSubject(),
+                        task.getBody(),
+                        attachment
+                ));
+            }
 
-    private void ensureStatusHeader(Sheet sheet) {
-        Row header = sheet.getRow(0);
-        if (header == null) header = sheet.createRow(0);
+            long start = System.nanoTime();
+            List<Exception> results;
+            try {
+                results = emailService.sendBatch(messages, run.job);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                // This group only: earlier groups keep their outcomes, later ones still go out
+                for (RowTask task : group) failOrCancel(run, task, e);
+                continue;
+            }
+            // The call's time spread over its rows (see JobStatus.recordSend)
+            long perRow = (System.nanoTime() - start) / group.size();
+            for (int i = 0; i < group.size(); i++) {
+                RowTask task = group.get(i);
+                run.job.recordSend(perRow);
+                if (results.get(i) == null) {
+                    task.setStatus("SENT");
+                } else {
+                    failOrCancel(run, task, results.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Parks the stage worker while the job is paused, so rows already queued
+     * are held back too. Rows are then dropped once a stage settled them
+     * or the job is being cancelled.
+     */
+    private boolean skip(JobRun run, RowTask task) throws InterruptedException {
+        run.job.awaitNotPaused();
+        if (task.isSettled()) return true;
+        if (run.job.cancelRequested()) {
+            task.cancel();
+            return true;
+        }
+        return false;
+    }
 
-        Cell cell = header.getCell(STATUS_COL);
-        if (cell == null) {
-            cell = header.createCell(STATUS_COL);
-            cell.setCellValue("Status");
+    private void failOrCancel(JobRun run, RowTask task, Exception e) {
+        if (run.job.cancelRequested()) {
+            task.cancel(); // aborted call or cancelled retry, not a delivery failure
+        } else {
+            task.fail(e);
         }
     }
 
-    private void updateExcelStatus(
-        Workbook workbook,
-        Sheet sheet,
-        int rowIndex,
-        String status
-    ) {
-        Row row = sheet.getRow(rowIndex);
-        if (row == null) return;
+    /**
+     * Records the row's final status. Every row reaches this stage exactly once.
+     */
+    private void commit(JobRun run, RowTask task) {
+        int i = task.getRecipient().row();
+        String status = task.getStatus() != null ? task.getStatus() : "FAILED: not sent";
+
+        if (run.retries != null) {
+            if (retryAgain(run, task, status)) {
+                // Not final: show the failure, send again after the backoff
+                jobStatusStore.updateRowStatus(run.jobId, i, status);
+                sseEmitterService.sendRow(run.jobId, jobStatusStore.getRow(run.jobId, i));
+                run.retries.retry(task.getRecipient(), task.getAttempt() + 1);
+                return;
+            }
+            run.retries.done();
+        }
 
-        int STATUS_COL = row.getLastCellNum(); // append new column
-        Cell cell = row.getCell(STATUS_COL);
-        if (cell == null) {
-            cell = row.createCell(STATUS_COL);
+        jobStatusStore.updateRowStatus(run.jobId, i, status);
+        writeBack.record(run.jobId, i, status);
+        if (status.startsWith("FAILED")) {
+            suppressionList.onFailure(task.getRecipient().email(), status);
         }
 
-        cell.setCellValue(status);
+        JobStatus.RowStatus updated = jobStatusStore.getRow(run.jobId, i);
+        run.journal.outcome(updated);
 
-        CellStyle style = workbook.createCellStyle();
-        Font font = workbook.createFont();
-        font.setBold(true);
+        // -------- Push updated row --------
+        sseEmitterService.sendRow(run.jobId, updated);
 
-        if (status.startsWith("SENT")) {
-            style.setFillForegroundColor(IndexedColors.LIGHT_GREEN.getIndex());
-            font.setColor(IndexedColors.DARK_GREEN.getIndex());
+        publishProgress(run, run.processed.incrementAndGet());
+    }
+
+    private boolean retryAgain(JobRun run, RowTask task, String status) {
+        return status.startsWith("FAILED")
+                && !run.job.cancelRequested()
+                && task.getAttempt() + 1 < retryMaxAttempts
+                && !FailureClass.of(status).isPermanent();
+    }
+
+    /** Against the total, or the estimate (capped below 100) while the read still counts. */
+    private void publishProgress(JobRun run, int processed) {
+        int total = run.totalRows;
+        int progress;
+        if (total > 0) {
+            progress = (processed * 100) / total;
+        } else if (run.estimatedRows > 0) {
+            progress = Math.min(99, (processed * 100) / run.estimatedRows);
         } else {
-            style.setFillForegroundColor(IndexedColors.ROSE.getIndex());
-            font.setColor(IndexedColors.DARK_RED.getIndex());
+            return; // nothing to measure against yet
         }
+        jobStatusStore.setProgress(run.jobId, progress);
 
-        style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        style.setFont(font);
-        cell.setCellStyle(style);
+        sseEmitterService.sendEvent(
+                run.jobId,
+                "progress",
+                Map.of("progress", progress)
+        );
     }
 
+    private void publishFinalProgress(String jobId) {
+        // -------- Final completion --------
+        jobStatusStore.setProgress(jobId, 100);
+        sseEmitterService.sendEvent(
+                jobId,
+                "progress",
+                Map.of("progress", 100)
+        );
+    }
+
+    // ================== Inner Class ==================
+
+    /** Per-job state shared by the parse stage and the pipeline workers. */
+    private class JobRun {
+        final String jobId;
+        final File excelFile;
+        final JobStatus job;
+        final JobJournal journal;
+        final AtomicInteger processed = new AtomicInteger();
+        final Map<String, Integer> columns = new ConcurrentHashMap<>();
+
+        // Async sends of this job in flight
+        final Semaphore window = new Semaphore(Math.max(1, asyncWindow));
+
+        // Set when the parse stage gave up its thread on pause
+        final AtomicBoolean detached = new AtomicBoolean();
+
+        volatile ColumnMapping mapping;
+        volatile boolean started;
+        volatile int totalRows = -1;     // -1 until counted
+        volatile int estimatedRows = -1; // progress guide while totalRows is -1
+        volatile int lastSubmittedRow;
+        private StagedPipeline<RowTask> pipeline;
+
+        // Retry mode only
+        List<JobStatus.RowStatus> retryRows;
+        RetryQueue<RecipientRow> retries;
+
+        JobRun(String jobId, File excelFile) {
+            this.jobId = jobId;
+            this.excelFile = excelFile;
+            this.job = jobStatusStore.getJob(jobId);
+            this.journal = jobStatusStore.journal(jobId);
+        }
 
+        /** Starts the pipeline; totalRows is -1 if the rows are counted while sending. */
+        void begin(int totalRows) {
+            this.started = true;
+            if (totalRows >= 0) total(totalRows);
+            if (totalRows == 0) return;
+
+            pipeline = newPipeline(this);
+            pipeline.start();
+        }
+
+        void total(int totalRows) {
+            this.totalRows = totalRows;
+            if (retryRows == null) {
+                // A retry's count is only for its own progress
+                job.setTotalRows(totalRows);
+                journal.total(totalRows);
+            }
+        }
+
+        void setHeader(String[] header) {
+            for (int c = 0; c < header.length; c++) {
+                String key = CompiledTemplate.normalizeKey(header[c]);
+                if (!key.isEmpty()) columns.putIfAbsent(key, c);
+            }
+        }
+
+        void submit(RecipientRow recipient) throws InterruptedException {
+            // Already handed over before the parse stage last yielded,
+            // or settled before a restart
+            if (recipient.row() <= lastSubmittedRow || job.hasOutcome(recipient.row())) return;
+
+            offer(new RowTask(recipient));
+            lastSubmittedRow = recipient.row();
+        }
+
+        void offer(RowTask task) throws InterruptedException {
+            do {
+                // Re-checked while the pipeline is backed up (e.g. parked by a pause)
+                checkState();
+            } while (!pipeline.offer(task, SUBMIT_CHECK_MS, TimeUnit.MILLISECONDS));
+        }
+
+        /**
+         * Throws JobYield on pause (after marking the run detached) and
+         * CancellationException on cancel. If resume() raced us and did not
+         * see the detached flag, we take it back and carry on.
+         */
+        private void checkState() {
+            while (true) {
+                JobState state = job.getState();
+                if (state == JobState.CANCELLING) throw new CancellationException("Job cancelled");
+                if (state != JobState.PAUSED) return;
+
+                detached.set(true);
+                if (job.getState() == JobState.PAUSED || !detached.compareAndSet(true, false)) {
+                    throw JobYield.INSTANCE;
+                }
+            }
+        }
+
+        void drain() {
+            if (pipeline == null) return;
+            try {
+                pipeline.finish();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Unwinds the parse stage (SAX callbacks included) when a job pauses. */
+    private static class JobYield extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        static final JobYield INSTANCE = new JobYield();
+
+        private JobYield() {
+            super("paused", null, false, false);
+        }
+    }
+
+    // ---------------- HELPERS ----------------
 
     private int countDataRows(Sheet sheet) {
         int count = 0;
@@ -228,6 +944,18 @@ public class EmailAsyncService {
         return true;
     }
 
+    private String cell(String[] cells, int col) {
+        return col >= 0 && col < cells.length ? cells[col] : "";
+    }
+
+    private String[] rowCells(Row row) {
+        String[] cells = new String[Math.max(0, row.getLastCellNum())];
+        for (int c = 0; c < cells.length; c++) {
+            cells[c] = getCellString(row.getCell(c));
+        }
+        return cells;
+    }
+
     private String getCellString(Cell cell) {
         if (cell == null) return "";
         return switch (cell.getCellType()) {
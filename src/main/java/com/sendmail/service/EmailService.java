@@ -1,109 +1,144 @@
 package com.sendmail.service;
 
-import okhttp3.*;
+import com.sendmail.job.JobStatus;
+import com.sendmail.job.JobStatusStore;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
-import java.nio.file.Files;
-import java.util.Base64;
+import jakarta.annotation.PostConstruct;
 
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends mail through the transport chosen for the job (see MailTransport),
+ * or the default one (sendmail.transport.default) outside of a job.
+ */
 @Service
 public class EmailService {
 
-    @Value("${BREVO_API_KEY}")
-    private String apiKey;
+    @Value("${sendmail.transport.default:brevo}")
+    private String defaultTransport;
+
+    @Autowired
+    private List<MailTransport> transportBeans;
 
-    @Value("${MAIL_FROM}")
-    private String fromEmail;
+    @Autowired
+    private JobStatusStore jobStatusStore;
 
-    private static final String BREVO_URL =
-            "https://api.brevo.com/v3/smtp/email";
+    private final Map<String, MailTransport> transports = new LinkedHashMap<>();
 
-    private final OkHttpClient client = new OkHttpClient.Builder()
-            .callTimeout(java.time.Duration.ofSeconds(30))
-            .build();
+    @PostConstruct
+    void init() {
+        for (MailTransport t : transportBeans) transports.put(t.name(), t);
+
+        if (!transports.containsKey(defaultTransport)) {
+            throw new IllegalStateException("Unknown sendmail.transport.default: " + defaultTransport);
+        }
+    }
+
+    // ---------------- TRANSPORTS ----------------
 
     /**
-     * Sends a single email using Brevo HTTP API
+     * The transport of that name, the default one for null/blank.
+     * IllegalArgumentException if unknown or not configured.
      */
+    public MailTransport transport(String name) {
+        String key = name == null || name.isBlank() ? defaultTransport : name.trim().toLowerCase();
+        MailTransport t = transports.get(key);
+        if (t == null) {
+            throw new IllegalArgumentException("Unknown transport: " + name
+                    + " (available: " + String.join(", ", transports.keySet()) + ")");
+        }
+        if (!t.isConfigured()) {
+            throw new IllegalArgumentException("Transport " + key + " is not configured");
+        }
+        return t;
+    }
+
+    /** Every transport with its figures, and which one is the default. */
+    public Map<String, Object> stats() {
+        Map<String, Object> all = new LinkedHashMap<>();
+        for (MailTransport t : transports.values()) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("configured", t.isConfigured());
+            m.putAll(t.stats());
+            all.put(t.name(), m);
+        }
+        return Map.of("default", defaultTransport, "transports", all);
+    }
+
+    /** Rate limiter figures per transport. */
+    public Map<String, Object> rateLimits() {
+        Map<String, Object> all = new LinkedHashMap<>();
+        for (MailTransport t : transports.values()) {
+            SendRateLimiter limiter = t.rateLimiter();
+            if (limiter != null) all.put(t.name(), limiter.snapshot());
+        }
+        return all;
+    }
+
+    // ---------------- SEND ----------------
+
     public void sendMail(
             String to,
             String subject,
             String htmlBody,
             File attachment
     ) throws Exception {
+        sendMail(to, subject, htmlBody, attachment, null);
+    }
 
-        if (apiKey == null || apiKey.isBlank()) {
-            throw new IllegalStateException("BREVO_API_KEY is missing");
-        }
-
-        if (fromEmail == null || fromEmail.isBlank()) {
-            throw new IllegalStateException("MAIL_FROM is missing");
-        }
-
-        String attachmentJson = "";
-        if (attachment != null && attachment.exists() && attachment.length() > 0) {
-            String encoded = Base64.getEncoder()
-                    .encodeToString(Files.readAllBytes(attachment.toPath()));
-
-            attachmentJson = """
-            ,"attachment":[
-              {
-                "content":"%s",
-                "name":"%s"
-              }
-            ]
-            """.formatted(encoded, attachment.getName());
-        }
+    /**
+     * Sends a single email on behalf of a job; cancelling the job stops
+     * further retries.
+     */
+    public void sendMail(
+            String to,
+            String subject,
+            String htmlBody,
+            File attachment,
+            JobStatus job
+    ) throws Exception {
+        transportOf(job).send(new PersonalizedMessage(to, subject, htmlBody, attachment), job);
+    }
 
-        String json = """
-        {
-          "sender": { "email": "%s" },
-          "to": [ { "email": "%s" } ],
-          "subject": "%s",
-          "htmlContent": "%s"
-          %s
-        }
-        """.formatted(
-                fromEmail,
-                to,
-                escape(subject),
-                escapeHtml(htmlBody),
-                attachmentJson
-        );
-
-        Request request = new Request.Builder()
-                .url(BREVO_URL)
-                .post(RequestBody.create(
-                        json,
-                        MediaType.parse("application/json")
-                ))
-                .addHeader("api-key", apiKey)
-                .addHeader("Content-Type", "application/json")
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-
-            if (!response.isSuccessful()) {
-                String body = response.body() != null
-                        ? response.body().string()
-                        : "no response body";
-
-                throw new RuntimeException(
-                        "Brevo API failed (" + response.code() + "): " + body
-                );
-            }
-        }
+    /**
+     * Starts sending a single email on behalf of a job and returns without
+     * waiting for the answer; the future completes with the outcome.
+     */
+    public CompletableFuture<Void> sendMailAsync(
+            String to,
+            String subject,
+            String htmlBody,
+            File attachment,
+            JobStatus job
+    ) throws Exception {
+        return transportOf(job).sendAsync(new PersonalizedMessage(to, subject, htmlBody, attachment), job);
     }
 
-    // ---------------- HELPERS ----------------
+    /**
+     * Sends several personalized messages sharing one attachment. Returns
+     * one entry per message, in order: null if it was accepted, otherwise
+     * the error for that message.
+     */
+    public List<Exception> sendBatch(List<PersonalizedMessage> messages) throws Exception {
+        return sendBatch(messages, null);
+    }
 
-    private String escape(String s) {
-        return s.replace("\"", "\\\"");
+    public List<Exception> sendBatch(List<PersonalizedMessage> messages, JobStatus job)
+            throws Exception {
+        return transportOf(job).sendBatch(messages, job);
     }
 
-    private String escapeHtml(String s) {
-        return escape(s.replace("\n", "<br>"));
+    private MailTransport transportOf(JobStatus job) {
+        String name = job != null ? jobStatusStore.getTransport(job.getJobId()) : null;
+        MailTransport t = transports.get(name != null ? name : defaultTransport);
+        if (t == null) throw new IllegalStateException("Unknown transport: " + name);
+        return t;
     }
 }
@@ -0,0 +1,197 @@
+package com.sendmail.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.sendmail.job.JobStatus;
+
+/**
+ * Per-job SSE event buffer.
+ *
+ * Updates are coalesced until the next flush (latest status per row,
+ * latest progress) and then rendered once into a frame: the SSE text of
+ * every event, written to each subscriber in a single send. Each frame
+ * gets a monotonic id; the last frames are kept in a ring so a
+ * reconnecting (or lagging) client can be replayed exactly what it missed.
+ */
+class JobEventBus {
+
+    /** One rendered SSE write. The id is carried by its last event. */
+    record Frame(long id, String text) {
+    }
+
+    private final ObjectMapper mapper;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // -------- Pending updates since the last frame --------
+    private final Map<Integer, JobStatus.RowStatus> rows = new LinkedHashMap<>();
+    private Object progress;
+    private final List<String[]> events = new ArrayList<>();
+
+    // -------- Replay ring --------
+    private final Frame[] ring;
+    private int ringStart;
+    private int ringSize;
+    private long nextId = 1;
+
+    final Set<SseSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+    final AtomicBoolean flushQueued = new AtomicBoolean();
+    private final long createdAt = System.currentTimeMillis();
+    private volatile long completedAt = -1;
+
+    JobEventBus(ObjectMapper mapper, int replayFrames) {
+        this.mapper = mapper;
+        this.ring = new Frame[Math.max(1, replayFrames)];
+    }
+
+    /** Queues a row update; returns how many rows are now pending. */
+    int row(JobStatus.RowStatus row) {
+        lock.lock();
+        try {
+            rows.put(row.getRow(), row);
+            return rows.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void progress(Object data) {
+        lock.lock();
+        try {
+            progress = data;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Any other event; kept in order, never coalesced. */
+    void event(String name, Object data) {
+        lock.lock();
+        try {
+            events.add(new String[] {name, payload(data)});
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Renders everything pending into a new frame and remembers it for
+     * replay. Null if nothing happened since the last flush.
+     */
+    Frame flush() {
+        lock.lock();
+        try {
+            if (rows.isEmpty() && progress == null && events.isEmpty()) return null;
+
+            List<String[]> out = new ArrayList<>(rows.size() + events.size() + 1);
+            for (JobStatus.RowStatus row : rows.values()) {
+                out.add(new String[] {"row", payload(row)});
+            }
+            if (progress != null) out.add(new String[] {"progress", payload(progress)});
+            out.addAll(events);
+
+            rows.clear();
+            progress = null;
+            events.clear();
+
+            long id = nextId++;
+            Frame frame = new Frame(id, render(out, id));
+            remember(frame);
+            return frame;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frames after the given id, oldest first. If the client is further
+     * behind than the ring reaches, it gets everything still kept.
+     */
+    List<Frame> since(long lastId) {
+        lock.lock();
+        try {
+            List<Frame> missed = new ArrayList<>();
+            for (int i = 0; i < ringSize; i++) {
+                Frame f = ring[(ringStart + i) % ring.length];
+                if (f.id() > lastId) missed.add(f);
+            }
+            return missed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Id of the newest frame, 0 before the first one. */
+    long lastId() {
+        lock.lock();
+        try {
+            return nextId - 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void markCompleted() {
+        completedAt = System.currentTimeMillis();
+    }
+
+    /** The job runs again (retry): new streams stay open, frames continue. */
+    void reopen() {
+        completedAt = -1;
+    }
+
+    boolean isCompleted() {
+        return completedAt >= 0;
+    }
+
+    /**
+     * Finished jobs are kept for retention-ms. A bus that never produced a
+     * frame (a stream opened for an unknown job) goes once nobody listens.
+     */
+    boolean expired(long retentionMs) {
+        long now = System.currentTimeMillis();
+        if (completedAt >= 0) return now - completedAt > retentionMs;
+        return lastId() == 0 && subscribers.isEmpty() && now - createdAt > retentionMs;
+    }
+
+    // ---------------- HELPERS ----------------
+
+    private void remember(Frame frame) {
+        if (ringSize < ring.length) {
+            ring[(ringStart + ringSize++) % ring.length] = frame;
+        } else {
+            ring[ringStart] = frame;
+            ringStart = (ringStart + 1) % ring.length;
+        }
+    }
+
+    private static String render(List<String[]> events, long id) {
+        StringBuilder sb = new StringBuilder(64 * events.size());
+        for (int i = 0; i < events.size(); i++) {
+            String[] e = events.get(i);
+            sb.append("event:").append(e[0]).append('\n');
+            if (i == events.size() - 1) sb.append("id:").append(id).append('\n');
+            sb.append("data:").append(e[1].replace("\n", "\ndata:")).append("\n\n");
+        }
+        return sb.toString();
+    }
+
+    /** Strings go out as-is, anything else as JSON (same as SseEmitter did). */
+    private String payload(Object data) {
+        if (data instanceof String s) return s;
+        try {
+            return mapper.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            return String.valueOf(data);
+        }
+    }
+}
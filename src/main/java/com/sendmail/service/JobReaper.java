@@ -0,0 +1,171 @@
+package com.sendmail.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.sendmail.AttachmentCache;
+import com.sendmail.AttachmentDownloader;
+import com.sendmail.ingest.SourceFormat;
+import com.sendmail.job.JobStatusStore;
+import com.sendmail.writeback.ExcelWriteBackService;
+
+/**
+ * Background housekeeping: moves finished jobs out of memory, forgets
+ * jobs past retention together with their upload, checkpoint and result
+ * files, and deletes temp files nobody owns any more (uploads of a previous
+ * process, legacy attachment downloads, idle cached attachments).
+ */
+@Component
+public class JobReaper {
+
+    private static final Logger log = LoggerFactory.getLogger(JobReaper.class);
+
+    @Autowired
+    private JobStatusStore jobStatusStore;
+
+    @Autowired
+    private AttachmentCache attachmentCache;
+
+    @Autowired
+    private ExcelWriteBackService writeBack;
+
+    @Value("${sendmail.jobs.reaper-interval-ms:60000}")
+    private long intervalMs;
+
+    @Value("${sendmail.jobs.retention-hours:168}")
+    private long retentionHours;
+
+    @Value("${sendmail.attachments.idle-ttl-minutes:60}")
+    private long attachmentIdleMinutes;
+
+    private final File tempDir = new File(System.getProperty("java.io.tmpdir"));
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "JobReaper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    void start() {
+        scheduler.scheduleWithFixedDelay(this::run, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /** One housekeeping pass. */
+    public void run() {
+        try {
+            jobStatusStore.evictFinished();
+
+            List<String> expired = jobStatusStore.expire();
+            for (String jobId : expired) {
+                writeBack.forget(jobId, new File(tempDir, "upload-" + jobId));
+                for (SourceFormat format : SourceFormat.values()) {
+                    new File(tempDir, "upload-" + jobId + format.extension()).delete();
+                }
+            }
+
+            int orphans = deleteOrphans();
+            int attachments = attachmentCache.reapIdle(attachmentIdleMinutes * 60_000);
+
+            if (!expired.isEmpty() || orphans > 0 || attachments > 0) {
+                log.info("Reaper: expired {} jobs, deleted {} temp files and {} cached attachments",
+                        expired.size(), orphans, attachments);
+            }
+        } catch (Exception e) {
+            log.warn("Reaper run failed", e);
+        }
+    }
+
+    /** Heap plus everything the jobs keep in memory and on disk. */
+    public Map<String, Object> stats() {
+        Runtime rt = Runtime.getRuntime();
+        Map<String, Object> heap = new LinkedHashMap<>();
+        heap.put("usedBytes", rt.totalMemory() - rt.freeMemory());
+        heap.put("committedBytes", rt.totalMemory());
+        heap.put("maxBytes", rt.maxMemory());
+
+        long uploadBytes = 0;
+        int uploads = 0;
+        File[] files = tempDir.listFiles((d, name) -> name.startsWith("upload-"));
+        if (files != null) {
+            for (File f : files) {
+                uploads++;
+                uploadBytes += f.length();
+            }
+        }
+        Map<String, Object> upload = new LinkedHashMap<>();
+        upload.put("files", uploads);
+        upload.put("bytes", uploadBytes);
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("heap", heap);
+        m.put("jobs", jobStatusStore.stats());
+        m.put("attachments", attachmentCache.stats());
+        m.put("uploads", upload);
+        return m;
+    }
+
+    // ---------------- HELPERS ----------------
+
+    /**
+     * Job temp files older than retention whose job the store no longer
+     * knows, e.g. left behind by a restart. A known job's files go only when
+     * the job itself expires, however old they are. Returns how many were
+     * deleted.
+     */
+    private int deleteOrphans() {
+        long cutoff = System.currentTimeMillis() - retentionHours * 3_600_000;
+        File[] files = tempDir.listFiles();
+        if (files == null) return 0;
+
+        int deleted = 0;
+        for (File f : files) {
+            if (!f.isFile() || f.lastModified() >= cutoff) continue;
+
+            String jobId = jobIdOf(f.getName());
+            // Attachments once downloaded straight into the temp dir (the cache has its own)
+            boolean legacyAttachment = f.getName().startsWith(AttachmentDownloader.FILE_PREFIX);
+            if (jobId == null && !legacyAttachment) continue;
+            if (jobId != null && jobStatusStore.isKnown(jobId)) continue;
+
+            if (f.delete()) deleted++;
+        }
+        return deleted;
+    }
+
+    /** Job ID of upload-/status-/result- files, else null. */
+    private static String jobIdOf(String name) {
+        if (name.startsWith("status-") && name.endsWith(".tsv")) {
+            return name.substring("status-".length(), name.length() - ".tsv".length());
+        }
+        for (SourceFormat format : SourceFormat.values()) {
+            String ext = format.extension();
+            if (name.startsWith("upload-") && name.endsWith(ext)) {
+                return name.substring("upload-".length(), name.length() - ext.length());
+            }
+            if (name.startsWith("result-") && name.endsWith(ext)) {
+                return name.substring("result-".length(), name.length() - ext.length());
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,60 @@
+package com.sendmail.service;
+
+import com.sendmail.job.JobStatus;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One way of delivering mail (Brevo HTTP API, SMTP relay, ...).
+ * Implementations are Spring beans; EmailService picks one per job by name.
+ */
+public interface MailTransport {
+
+    /** Name a job selects the transport by, e.g. "brevo". */
+    String name();
+
+    /** False if the settings it needs are missing; jobs cannot select it then. */
+    boolean isConfigured();
+
+    /**
+     * Sends one message on behalf of a job (null for none). Throttled
+     * answers are retried through the shared rate limiter.
+     */
+    void send(PersonalizedMessage message, JobStatus job) throws Exception;
+
+    /**
+     * Starts sending one message and returns once it is under way (after
+     * any rate-limit or in-flight window wait); the future completes with
+     * the outcome. Transports without a non-blocking client send on the
+     * calling thread.
+     */
+    default CompletableFuture<Void> sendAsync(PersonalizedMessage message, JobStatus job)
+            throws Exception {
+        try {
+            send(message, job);
+            return CompletableFuture.completedFuture(null);
+        } catch (InterruptedException ie) {
+            throw ie;
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Sends messages sharing one attachment. Returns one entry per message,
+     * in order: null if it was accepted, otherwise the error for that message.
+     */
+    List<Exception> sendBatch(List<PersonalizedMessage> messages, JobStatus job) throws Exception;
+
+    /** The transport's own send rate limiter, or null if it has none. */
+    default SendRateLimiter rateLimiter() {
+        return null;
+    }
+
+    /** Connection and delivery figures for the /transports endpoint. */
+    default Map<String, Object> stats() {
+        return Map.of();
+    }
+}
@@ -0,0 +1,15 @@
+package com.sendmail.service;
+
+import java.io.File;
+
+/**
+ * One recipient's version of a mail inside a batched send.
+ * Messages batched together must share the same attachment.
+ */
+public record PersonalizedMessage(
+        String to,
+        String subject,
+        String htmlBody,
+        File attachment
+) {
+}
@@ -0,0 +1,184 @@
+package com.sendmail.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket shared by every job's send workers on one transport; each
+ * transport has its own, so throttling by one provider does not slow jobs
+ * sending through another.
+ *
+ * The refill rate adapts AIMD-style: each throttled answer (429/5xx) halves
+ * it and honours Retry-After by closing the bucket until then (nothing
+ * refills meanwhile); each successful send adds a small step back, up to
+ * the configured rate.
+ */
+public class SendRateLimiter {
+
+    private final double maxRate;
+    private final int burst;
+    private final double minRate;
+    private final double increaseStep;
+    private final double decreaseFactor;
+
+    // A lock rather than synchronized: waiters never pin a virtual thread's carrier
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private double rate;          // permits per second
+    private double tokens;
+    private long lastRefillNanos;
+    private long blockedUntilNanos;
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private volatile long lastWaitNanos;
+
+    public SendRateLimiter(double maxRate, int burst, double minRate,
+                           double increaseStep, double decreaseFactor) {
+        this.maxRate = maxRate;
+        this.burst = burst;
+        this.minRate = minRate;
+        this.increaseStep = increaseStep;
+        this.decreaseFactor = decreaseFactor;
+
+        rate = maxRate;
+        tokens = burst;
+        lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Blocks until a send is allowed. Returns the time spent waiting.
+     */
+    public long acquire() throws InterruptedException {
+        return acquire(1);
+    }
+
+    /**
+     * Blocks until {@code permits} messages may go out (one batched request).
+     * Batches larger than the burst are let through once the bucket is full
+     * and leave it in debt, which later sends pay back.
+     */
+    public long acquire(int permits) throws InterruptedException {
+        long start = System.nanoTime();
+
+        while (true) {
+            long waitNanos = tryReserve(permits);
+            if (waitNanos == 0) break;
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+
+        long waited = System.nanoTime() - start;
+        acquired.addAndGet(permits);
+        totalWaitNanos.addAndGet(waited);
+        lastWaitNanos = waited;
+        return waited;
+    }
+
+    /**
+     * Non-blocking acquire, for callers that must not park a thread:
+     * 0 if a send is allowed now, else how long (ns) to wait before asking again.
+     */
+    public long tryAcquire() {
+        long waitNanos = tryReserve(1);
+        if (waitNanos == 0) acquired.incrementAndGet();
+        return waitNanos;
+    }
+
+    /** Additive increase after an accepted send. */
+    public void onSuccess() {
+        lock.lock();
+        try {
+            rate = Math.min(maxRate, rate + increaseStep);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Multiplicative decrease after a throttled send; if the provider said
+     * how long to wait, nobody sends before then.
+     */
+    public void onThrottle(long retryAfterMillis) {
+        throttled.incrementAndGet();
+
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            rate = Math.max(minRate, rate * decreaseFactor);
+            tokens = Math.min(tokens, 1);
+
+            if (retryAfterMillis > 0) {
+                long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis);
+                blockedUntilNanos = Math.max(blockedUntilNanos, until);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        long now = System.nanoTime();
+        long n = acquired.get();
+
+        double currentRate;
+        long blockedUntil;
+        lock.lock();
+        try {
+            currentRate = rate;
+            blockedUntil = blockedUntilNanos;
+        } finally {
+            lock.unlock();
+        }
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("currentRate", Math.round(currentRate * 100) / 100.0);
+        m.put("maxRate", maxRate);
+        m.put("burst", burst);
+        m.put("blockedForMs", Math.max(0, TimeUnit.NANOSECONDS.toMillis(blockedUntil - now)));
+        m.put("acquired", n);
+        m.put("throttled", throttled.get());
+        m.put("lastWaitMs", TimeUnit.NANOSECONDS.toMillis(lastWaitNanos));
+        m.put("avgWaitMs", n == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get() / n));
+        return m;
+    }
+
+    // ---------------- HELPERS ----------------
+
+    /** Takes a token if one is free; otherwise returns how long to wait. */
+    private long tryReserve(int permits) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+
+            if (now < blockedUntilNanos) {
+                return blockedUntilNanos - now;
+            }
+
+            refill(now);
+            double needed = Math.min(permits, burst);
+            if (tokens >= needed) {
+                tokens -= permits;
+                return 0;
+            }
+            return Math.max(1, (long) ((needed - tokens) / rate * 1_000_000_000L));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Tokens accrue only outside a Retry-After block, so sending resumes
+     * from the (near empty) bucket the throttle left, not a full burst.
+     */
+    private void refill(long now) {
+        long from = Math.max(lastRefillNanos, blockedUntilNanos);
+        if (now > from) {
+            tokens = Math.min(burst, tokens + (now - from) / 1_000_000_000.0 * rate);
+        }
+        lastRefillNanos = now;
+    }
+}
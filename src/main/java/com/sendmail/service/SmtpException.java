@@ -0,0 +1,33 @@
+package com.sendmail.service;
+
+/**
+ * Negative SMTP reply to a message, keeping what the rate limiter needs.
+ */
+public class SmtpException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int replyCode;
+    private final boolean recipient;
+
+    public SmtpException(int replyCode, boolean recipient, String reply, Throwable cause) {
+        super("SMTP failed (" + replyCode + "): " + (recipient ? "recipient rejected: " : "")
+                + (reply != null ? reply.trim() : ""), cause);
+        this.replyCode = replyCode;
+        this.recipient = recipient;
+    }
+
+    public int getReplyCode() {
+        return replyCode;
+    }
+
+    /** True if the server refused the recipient address (RCPT TO). */
+    public boolean isRecipient() {
+        return recipient;
+    }
+
+    /** 4xx replies are temporary: "try again later", not "this message is bad". */
+    public boolean isThrottle() {
+        return replyCode >= 400 && replyCode < 500;
+    }
+}
@@ -0,0 +1,398 @@
+package com.sendmail.service;
+
+import com.sendmail.job.JobStatus;
+import com.sendmail.util.FileNames;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Message;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeBodyPart;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeMultipart;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mail.MailProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivery through the SMTP relay configured under spring.mail.*, over a
+ * pool of authenticated connections kept open between messages.
+ *
+ * A sender borrows a connection, sends on it and hands it back, so connect,
+ * EHLO, STARTTLS and AUTH are paid once per connection rather than once per
+ * message; up to pool-size sessions send in parallel. A batch goes out
+ * message after message on one connection. Connections idle for longer than
+ * idle-timeout-ms, or that carried max-messages-per-connection, are closed
+ * and replaced. A send already on the wire is not aborted by a cancel; it
+ * is bounded by mail.smtp.timeout.
+ */
+@Component
+public class SmtpTransport implements MailTransport {
+
+    @Value("${MAIL_FROM}")
+    private String fromEmail;
+
+    @Value("${sendmail.smtp.pool-size:4}")
+    private int poolSize;
+
+    @Value("${sendmail.smtp.max-messages-per-connection:500}")
+    private int maxMessagesPerConnection;
+
+    @Value("${sendmail.smtp.idle-timeout-ms:30000}")
+    private long idleTimeoutMs;
+
+    // Own limiter, defaulting to the Brevo settings: a relay's 4xx must
+    // not slow jobs sending through another transport
+    @Value("${sendmail.smtp.ratelimit.rate:${sendmail.ratelimit.rate:5}}")
+    private double rate;
+
+    @Value("${sendmail.smtp.ratelimit.burst:${sendmail.ratelimit.burst:10}}")
+    private int burst;
+
+    @Value("${sendmail.smtp.ratelimit.min-rate:${sendmail.ratelimit.min-rate:0.5}}")
+    private double minRate;
+
+    @Value("${sendmail.smtp.ratelimit.increase-step:${sendmail.ratelimit.increase-step:0.05}}")
+    private double increaseStep;
+
+    @Value("${sendmail.smtp.ratelimit.decrease-factor:${sendmail.ratelimit.decrease-factor:0.5}}")
+    private double decreaseFactor;
+
+    @Value("${sendmail.ratelimit.max-throttle-retries:3}")
+    private int maxThrottleRetries;
+
+    // Only bound when spring.mail.host is set
+    @Autowired
+    private ObjectProvider<MailProperties> mailProperties;
+
+    private SendRateLimiter rateLimiter;
+    private MailProperties settings;
+    private Session session;
+    private String charset;
+    private Semaphore permits;
+
+    // Most recently used first, so the cold ones are the ones that expire
+    private final LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong closed = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        rateLimiter = new SendRateLimiter(rate, burst, minRate, increaseStep, decreaseFactor);
+        settings = mailProperties.getIfAvailable();
+        permits = new Semaphore(Math.max(1, poolSize));
+        if (!isConfigured()) return;
+
+        Properties props = new Properties();
+        props.putAll(settings.getProperties());
+        session = Session.getInstance(props);
+        charset = settings.getDefaultEncoding() != null
+                ? settings.getDefaultEncoding().name()
+                : StandardCharsets.UTF_8.name();
+    }
+
+    @PreDestroy
+    void close() {
+        Connection c;
+        while ((c = idle.pollFirst()) != null) c.close();
+    }
+
+    @Override
+    public String name() {
+        return "smtp";
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return settings != null && settings.getHost() != null && !settings.getHost().isBlank()
+                && fromEmail != null && !fromEmail.isBlank();
+    }
+
+    @Override
+    public SendRateLimiter rateLimiter() {
+        return rateLimiter;
+    }
+
+    // ---------------- SEND ----------------
+
+    @Override
+    public void send(PersonalizedMessage message, JobStatus job) throws Exception {
+        checkConfig();
+
+        MimeMessage mime = build(message);
+        Lease lease = borrow(job);
+        try {
+            deliver(lease, mime, job);
+        } finally {
+            lease.release();
+        }
+    }
+
+    /** Every message on one borrowed connection. */
+    @Override
+    public List<Exception> sendBatch(List<PersonalizedMessage> messages, JobStatus job)
+            throws Exception {
+
+        if (messages.isEmpty()) return List.of();
+        checkConfig();
+
+        List<Exception> results = new ArrayList<>(messages.size());
+        Lease lease = borrow(job);
+        try {
+            for (PersonalizedMessage m : messages) {
+                try {
+                    deliver(lease, build(m), job);
+                    results.add(null);
+                } catch (InterruptedException ie) {
+                    throw ie;
+                } catch (Exception e) {
+                    results.add(e);
+                }
+            }
+        } finally {
+            lease.release();
+        }
+        return results;
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("configured", isConfigured());
+        if (settings != null) m.put("host", settings.getHost() + ":" + settings.getPort());
+        m.put("poolSize", permits.availablePermits() + inUse());
+        m.put("inUse", inUse());
+        m.put("idle", idle.size());
+        m.put("opened", opened.get());
+        m.put("closed", closed.get());
+        m.put("delivered", delivered.get());
+        return m;
+    }
+
+    // ---------------- HELPERS ----------------
+
+    /**
+     * Sends one message on the lease's connection. Temporary (4xx) replies
+     * are retried through the rate limiter; a reused connection found dead
+     * is replaced once, before anything of the message was accepted.
+     */
+    private void deliver(Lease lease, MimeMessage mime, JobStatus job) throws Exception {
+        boolean reconnected = false;
+
+        for (int attempt = 0; ; attempt++) {
+            rateLimiter.acquire();
+            checkCancelled(job);
+
+            Connection c = lease.connection();
+            try {
+                c.transport.sendMessage(mime, mime.getAllRecipients());
+                c.messages++;
+                delivered.incrementAndGet();
+                rateLimiter.onSuccess();
+                return;
+            } catch (SendFailedException e) {
+                // The server answered; the session survives unless it hung up
+                if (!c.transport.isConnected()) lease.discard();
+
+                SmtpException rejected = rejection(e);
+                if (rejected == null) throw e;
+                if (!rejected.isThrottle()) throw rejected;
+
+                rateLimiter.onThrottle(-1);
+                if (attempt >= maxThrottleRetries) throw rejected;
+            } catch (MessagingException e) {
+                // No reply: the connection is gone (server idle timeout, reset)
+                boolean reused = c.messages > 0;
+                lease.discard();
+                if (!reused || reconnected) throw e;
+                reconnected = true;
+            }
+        }
+    }
+
+    private MimeMessage build(PersonalizedMessage m) throws Exception {
+        MimeMessage mime = new MimeMessage(session);
+        mime.setFrom(new InternetAddress(fromEmail));
+        try {
+            mime.setRecipient(Message.RecipientType.TO, new InternetAddress(m.to(), true));
+        } catch (AddressException e) {
+            throw new SmtpException(553, true, "not a valid address, not sent", e);
+        }
+        mime.setSubject(m.subject(), charset);
+        mime.setSentDate(new Date());
+
+        File file = usable(m.attachment());
+        if (file == null) {
+            mime.setText(m.htmlBody(), charset, "html");
+        } else {
+            MimeBodyPart body = new MimeBodyPart();
+            body.setText(m.htmlBody(), charset, "html");
+
+            MimeBodyPart attachment = new MimeBodyPart();
+            attachment.attachFile(file);
+            attachment.setFileName(FileNames.safe(file.getName()));
+
+            MimeMultipart mixed = new MimeMultipart();
+            mixed.addBodyPart(body);
+            mixed.addBodyPart(attachment);
+            mime.setContent(mixed);
+        }
+        mime.saveChanges();
+        return mime;
+    }
+
+    /** Reply code and text of a rejected message; null if the server gave none. */
+    private static SmtpException rejection(SendFailedException e) {
+        Exception x = e;
+        while (x != null) {
+            if (x instanceof SMTPAddressFailedException a) {
+                return new SmtpException(a.getReturnCode(), true, reply(a), e);
+            }
+            x = x instanceof MessagingException me ? me.getNextException() : null;
+        }
+        if (e instanceof SMTPSendFailedException s) {
+            return new SmtpException(s.getReturnCode(), false, reply(s), e);
+        }
+        return null;
+    }
+
+    /** Server text without the leading reply code. */
+    private static String reply(MessagingException e) {
+        String s = e.getMessage() != null ? e.getMessage().trim() : "";
+        int i = 0;
+        while (i < s.length() && Character.isDigit(s.charAt(i))) i++;
+        return s.substring(i).trim();
+    }
+
+    private Lease borrow(JobStatus job) throws InterruptedException {
+        while (!permits.tryAcquire(1, TimeUnit.SECONDS)) checkCancelled(job);
+
+        Lease lease = new Lease();
+        Connection c;
+        while ((c = idle.pollFirst()) != null) {
+            if (c.reusable()) {
+                lease.conn = c;
+                break;
+            }
+            c.close();
+        }
+        return lease;
+    }
+
+    private Connection open() throws MessagingException {
+        Transport t = session.getTransport(settings.getProtocol());
+        t.connect(
+                settings.getHost(),
+                settings.getPort() != null ? settings.getPort() : -1,
+                blankToNull(settings.getUsername()),
+                blankToNull(settings.getPassword())
+        );
+        opened.incrementAndGet();
+        return new Connection(t);
+    }
+
+    private int inUse() {
+        return Math.max(1, poolSize) - permits.availablePermits();
+    }
+
+    private void checkConfig() {
+        if (settings == null || settings.getHost() == null || settings.getHost().isBlank()) {
+            throw new IllegalStateException("spring.mail.host is missing");
+        }
+
+        if (fromEmail == null || fromEmail.isBlank()) {
+            throw new IllegalStateException("MAIL_FROM is missing");
+        }
+    }
+
+    private static void checkCancelled(JobStatus job) {
+        if (job != null && job.cancelRequested()) {
+            throw new CancellationException("Job cancelled");
+        }
+    }
+
+    private static File usable(File attachment) {
+        return attachment != null && attachment.exists() && attachment.length() > 0
+                ? attachment
+                : null;
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s;
+    }
+
+    // ================== Inner Class ==================
+
+    /** An open, authenticated SMTP session. */
+    private final class Connection {
+        final Transport transport;
+        int messages;
+        long lastUsed = System.currentTimeMillis();
+
+        Connection(Transport transport) {
+            this.transport = transport;
+        }
+
+        boolean reusable() {
+            return messages < maxMessagesPerConnection
+                    && System.currentTimeMillis() - lastUsed < idleTimeoutMs;
+        }
+
+        void close() {
+            try {
+                transport.close();
+            } catch (MessagingException ignored) {
+                // already gone
+            }
+            closed.incrementAndGet();
+        }
+    }
+
+    /** One pool slot, held by one sender; the connection is opened on first use. */
+    private final class Lease {
+        Connection conn;
+
+        Connection connection() throws MessagingException {
+            if (conn == null) conn = open();
+            return conn;
+        }
+
+        void discard() {
+            if (conn != null) conn.close();
+            conn = null;
+        }
+
+        void release() {
+            if (conn != null) {
+                conn.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(conn);
+                conn = null;
+            }
+            permits.release();
+        }
+    }
+}
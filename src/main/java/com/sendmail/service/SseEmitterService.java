@@ -1,41 +1,142 @@
 package com.sendmail.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import com.sendmail.job.JobStatus;
 
+/**
+ * SSE updates per job, fanned out to any number of open streams.
+ *
+ * Events go into the job's {@link JobEventBus} and are rendered into
+ * coalesced frames by a single ticker thread, every tick-ms or as soon as
+ * frame-rows rows are pending; control and completion events are flushed
+ * right away. The ticker only queues frames: every subscriber is written
+ * by its own dispatcher task, so neither the job nor other clients ever
+ * wait on a slow connection.
+ */
 @Component
 public class SseEmitterService {
 
-    private final ConcurrentHashMap<String, SseEmitter> emitters = new ConcurrentHashMap<>();
+    private static final Logger log = LoggerFactory.getLogger(SseEmitterService.class);
 
-    public SseEmitter createEmitter(String jobId) {
-        SseEmitter emitter = new SseEmitter(0L); // infinite timeout
-        emitters.put(jobId, emitter);
+    /** At most one tick failure warning per interval; the rest go to debug. */
+    private static final long TICK_WARN_INTERVAL_MS = 60_000;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("sseExecutor")
+    private Executor dispatcher;
+
+    @Value("${sendmail.sse.tick-ms:250}")
+    private long tickMs;
+
+    @Value("${sendmail.sse.frame-rows:100}")
+    private int frameRows;
+
+    @Value("${sendmail.sse.replay-frames:256}")
+    private int replayFrames;
+
+    @Value("${sendmail.sse.retention-ms:300000}")
+    private long retentionMs;
+
+    @Value("${sendmail.sse.subscriber-queue:32}")
+    private int subscriberQueue;
+
+    @Value("${sendmail.sse.heartbeat-ms:15000}")
+    private long heartbeatMs;
+
+    @Value("${sendmail.sse.send-timeout-ms:30000}")
+    private long sendTimeoutMs;
+
+    @Value("${sendmail.sse.emitter-timeout-ms:1800000}")
+    private long emitterTimeoutMs;
+
+    private final ConcurrentHashMap<String, JobEventBus> buses = new ConcurrentHashMap<>();
 
-        emitter.onCompletion(() -> emitters.remove(jobId));
-        emitter.onTimeout(() -> emitters.remove(jobId));
-        emitter.onError(e -> emitters.remove(jobId));
+    // Ticker thread only
+    private long lastTickWarn;
+    private int tickFailures;
+
+    // Frame rendering and subscriber registration run here, in order
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "SseTick");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    void start() {
+        ticker.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * Opens another stream for the job. With a Last-Event-ID the frames the
+     * client missed are replayed first; a stream for a finished job is then
+     * closed. Without one, the stream starts with the next frame. Streams
+     * end after emitter-timeout-ms; the client's reconnect replays the gap.
+     */
+    public SseEmitter createEmitter(String jobId, String lastEventId) {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        long after = parseEventId(lastEventId);
+
+        ticker.execute(() -> {
+            JobEventBus bus = bus(jobId);
+            SseSubscriber sub = after >= 0
+                    ? new SseSubscriber(emitter, bus, subscriberQueue, after, true)
+                    : new SseSubscriber(emitter, bus, subscriberQueue, bus.lastId(), false);
+
+            Runnable remove = () -> {
+                sub.close();
+                bus.subscribers.remove(sub);
+            };
+            emitter.onCompletion(remove);
+            emitter.onTimeout(remove);
+            emitter.onError(e -> remove.run());
+
+            bus.subscribers.add(sub);
+            if (sub.scheduleDrain()) dispatcher.execute(sub::drain);
+            if (bus.isCompleted() && sub.completeWhenDrained()) dispatcher.execute(sub::drain);
+        });
 
         return emitter;
     }
 
+    public SseEmitter createEmitter(String jobId) {
+        return createEmitter(jobId, null);
+    }
+
     // ---------------- GENERIC SEND ----------------
 
     public void sendEvent(String jobId, String eventName, Object data) {
-        SseEmitter emitter = emitters.get(jobId);
-        if (emitter == null) return;
-
-        try {
-            emitter.send(SseEmitter.event()
-                    .name(eventName)
-                    .data(data));
-        } catch (IOException e) {
-            emitters.remove(jobId);
+        JobEventBus bus = bus(jobId);
+        if ("progress".equals(eventName)) {
+            bus.progress(data); // only the latest value matters
+        } else {
+            bus.event(eventName, data);
+            flushSoon(bus);
         }
     }
 
@@ -46,7 +147,12 @@ public class SseEmitterService {
     // ---------------- ROW UPDATES ----------------
 
     public void sendRow(String jobId, JobStatus.RowStatus rowStatus) {
-        sendEvent(jobId, "row", rowStatus);
+        if (rowStatus == null) return;
+
+        JobEventBus bus = bus(jobId);
+        if (bus.row(rowStatus) >= frameRows) {
+            flushSoon(bus);
+        }
     }
 
     // ---------------- CONTROL EVENTS ----------------
@@ -62,12 +168,99 @@ public class SseEmitterService {
         complete(jobId);
     }
 
+    /**
+     * Flushes what is pending and closes every stream once it has been
+     * written. The bus is kept for retention-ms so a late reconnect can
+     * still replay the end of the job.
+     */
     public void complete(String jobId) {
-        SseEmitter emitter = emitters.remove(jobId);
-        if (emitter != null) {
-            try {
-                emitter.complete();
-            } catch (Exception ignored) {}
+        ticker.execute(() -> {
+            JobEventBus bus = buses.get(jobId);
+            if (bus == null) return;
+
+            flush(bus);
+            bus.markCompleted();
+            for (SseSubscriber sub : bus.subscribers) {
+                if (sub.completeWhenDrained()) dispatcher.execute(sub::drain);
+            }
+        });
+    }
+
+    /**
+     * Continues the job's stream after it completed (retry). Clients that
+     * were closed reconnect with Last-Event-ID and miss nothing.
+     */
+    public void reopen(String jobId) {
+        ticker.execute(() -> bus(jobId).reopen());
+    }
+
+    // ---------------- FRAMES ----------------
+
+    private JobEventBus bus(String jobId) {
+        return buses.computeIfAbsent(jobId, id -> new JobEventBus(objectMapper, replayFrames));
+    }
+
+    private void flushSoon(JobEventBus bus) {
+        if (bus.flushQueued.compareAndSet(false, true)) {
+            ticker.execute(() -> flush(bus));
+        }
+    }
+
+    private void tick() {
+        try {
+            buses.forEach((jobId, bus) -> {
+                flush(bus);
+                heartbeat(bus);
+                if (bus.expired(retentionMs)) buses.remove(jobId, bus);
+            });
+        } catch (Exception e) {
+            tickFailures++;
+            long now = System.currentTimeMillis();
+            if (now - lastTickWarn >= TICK_WARN_INTERVAL_MS) {
+                log.warn("SSE tick failed ({} since last warning): {}", tickFailures, e.toString());
+                lastTickWarn = now;
+                tickFailures = 0;
+            } else {
+                log.debug("SSE tick failed", e);
+            }
+        }
+    }
+
+    private void flush(JobEventBus bus) {
+        bus.flushQueued.set(false);
+        JobEventBus.Frame frame = bus.flush();
+        if (frame == null) return;
+
+        for (SseSubscriber sub : bus.subscribers) {
+            if (sub.offer(frame)) dispatcher.execute(sub::drain);
+        }
+    }
+
+    /**
+     * Keeps idle streams alive through proxies and finds dead ones. A
+     * stream whose write has been stuck for send-timeout-ms is dropped:
+     * it gets no more frames, and its dispatcher thread is released as
+     * soon as the write fails.
+     */
+    private void heartbeat(JobEventBus bus) {
+        for (SseSubscriber sub : bus.subscribers) {
+            if (sub.isClosed()) {
+                bus.subscribers.remove(sub);
+            } else if (sub.stalledMillis() >= sendTimeoutMs) {
+                sub.close();
+                bus.subscribers.remove(sub);
+            } else if (sub.idleMillis() >= heartbeatMs && sub.offer(SseSubscriber.HEARTBEAT)) {
+                dispatcher.execute(sub::drain);
+            }
+        }
+    }
+
+    private static long parseEventId(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) return -1;
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return -1;
         }
     }
 }
@@ -0,0 +1,213 @@
+package com.sendmail.service;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One open SSE stream of a job.
+ *
+ * Frames are offered by the ticker without blocking and written by a
+ * dispatcher thread, at most one drain per subscriber at a time. When a
+ * slow client lets its queue overflow, the queued frames are dropped and
+ * the subscriber later catches up from the job's replay ring instead
+ * (or is told to resync if the ring no longer reaches back that far).
+ */
+class SseSubscriber {
+
+    private static final MediaType SSE_TEXT = new MediaType("text", "plain", StandardCharsets.UTF_8);
+
+    static final JobEventBus.Frame HEARTBEAT = new JobEventBus.Frame(-1, ":hb\n\n");
+
+    final SseEmitter emitter;
+    private final JobEventBus bus;
+    private final int capacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<JobEventBus.Frame> queue = new ArrayDeque<>();
+    private boolean draining;
+    private boolean lagging;
+    private boolean completeWhenDrained;
+
+    // Written by the draining thread only
+    private long lastSentId;
+
+    private volatile boolean closed;
+    private volatile long lastWriteAt = System.currentTimeMillis();
+    private volatile long sendingSince; // 0 when no write is in progress
+
+    /**
+     * @param lastSentId frames up to this id are not sent; with
+     *                   {@code replay} the ones after it come from the ring
+     */
+    SseSubscriber(SseEmitter emitter, JobEventBus bus, int capacity, long lastSentId, boolean replay) {
+        this.emitter = emitter;
+        this.bus = bus;
+        this.capacity = Math.max(1, capacity);
+        this.lastSentId = lastSentId;
+        this.lagging = replay;
+    }
+
+    /**
+     * Queues a frame. Never blocks. Returns true if the caller must
+     * schedule a drain.
+     */
+    boolean offer(JobEventBus.Frame frame) {
+        lock.lock();
+        try {
+            if (closed) return false;
+
+            if (frame != HEARTBEAT) {
+                if (queue.size() >= capacity) {
+                    // Too slow: forget the backlog, catch up from the ring later
+                    queue.clear();
+                    lagging = true;
+                } else if (!lagging) {
+                    queue.add(frame);
+                }
+            } else if (queue.isEmpty() && !lagging) {
+                queue.add(frame);
+            }
+            return startDrain();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Closes the stream once everything queued so far has been written. */
+    boolean completeWhenDrained() {
+        lock.lock();
+        try {
+            completeWhenDrained = true;
+            return startDrain();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Catch-up from the ring right away (used on reconnect). */
+    boolean scheduleDrain() {
+        lock.lock();
+        try {
+            return startDrain();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes queued frames until the queue is empty. Runs on a dispatcher
+     * thread; a stalled client only ever stalls this subscriber.
+     */
+    void drain() {
+        while (true) {
+            JobEventBus.Frame next;
+            boolean catchUp;
+            boolean finish = false;
+
+            lock.lock();
+            try {
+                catchUp = lagging;
+                lagging = false;
+                next = catchUp ? null : queue.poll();
+
+                if (!catchUp && next == null) {
+                    draining = false;
+                    finish = completeWhenDrained && !closed;
+                    if (!finish) return;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (finish) {
+                close();
+                try {
+                    emitter.complete();
+                } catch (Exception ignored) {}
+                return;
+            }
+
+            boolean ok = catchUp ? catchUp() : write(next);
+            if (!ok) {
+                close();
+                return;
+            }
+        }
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    long idleMillis() {
+        return System.currentTimeMillis() - lastWriteAt;
+    }
+
+    /** How long the write in progress has been blocked; 0 if none is. */
+    long stalledMillis() {
+        long since = sendingSince;
+        return since == 0 ? 0 : System.currentTimeMillis() - since;
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            queue.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ---------------- HELPERS ----------------
+
+    private boolean startDrain() {
+        if (draining || closed) return false;
+        if (queue.isEmpty() && !lagging && !completeWhenDrained) return false;
+        draining = true;
+        return true;
+    }
+
+    private boolean catchUp() {
+        List<JobEventBus.Frame> missed = bus.since(lastSentId);
+        if (!missed.isEmpty() && missed.get(0).id() > lastSentId + 1) {
+            // Older frames already fell out of the ring: client must reload /status
+            String resync = "event:resync\ndata:{\"after\":" + lastSentId
+                    + ",\"resumeAt\":" + missed.get(0).id() + "}\n\n";
+            if (!send(resync)) return false;
+        }
+        for (JobEventBus.Frame frame : missed) {
+            if (!write(frame)) return false;
+        }
+        return true;
+    }
+
+    private boolean write(JobEventBus.Frame frame) {
+        if (frame != HEARTBEAT && frame.id() <= lastSentId) return true; // already sent during catch-up
+        if (!send(frame.text())) return false;
+        if (frame != HEARTBEAT) lastSentId = frame.id();
+        return true;
+    }
+
+    /** One write (and flush) per frame, however many events it holds. */
+    private boolean send(String text) {
+        if (closed) return false;
+        sendingSince = System.currentTimeMillis();
+        try {
+            emitter.send(Set.of(new ResponseBodyEmitter.DataWithMediaType(text, SSE_TEXT)));
+            lastWriteAt = System.currentTimeMillis();
+            return !closed; // dropped as stalled while the write was blocked
+        } catch (Exception e) {
+            return false;
+        } finally {
+            sendingSince = 0;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.sendmail.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.sendmail.util.CompiledTemplate;
+import com.sendmail.util.EmailTemplateUtil;
+
+/**
+ * Compiles each template once and renders it per row.
+ *
+ * With hot reload on, the resource's last-modified time is checked at most
+ * once per interval and the template recompiled when it changed.
+ */
+@Service
+public class TemplateService {
+
+    private static final int MAX_KEPT_BUFFER = 256 * 1024;
+
+    @Value("${sendmail.templates.hot-reload:false}")
+    private boolean hotReload;
+
+    @Value("${sendmail.templates.check-interval-ms:2000}")
+    private long checkIntervalMs;
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<StringBuilder> buffer =
+            ThreadLocal.withInitial(() -> new StringBuilder(4096));
+
+    public String render(String file, Function<String, String> vars) throws Exception {
+        CompiledTemplate t = get(file);
+        if (t.isConstant()) return t.constant();
+
+        StringBuilder sb = buffer.get();
+        sb.setLength(0);
+        sb.ensureCapacity(t.estimatedLength());
+        t.renderTo(sb, vars);
+        String out = sb.toString();
+
+        if (sb.capacity() > MAX_KEPT_BUFFER) {
+            buffer.remove();
+        }
+        return out;
+    }
+
+    public CompiledTemplate get(String file) throws Exception {
+        Entry e = cache.get(file);
+        if (e == null || (hotReload && e.isStale(checkIntervalMs))) {
+            e = new Entry(file, EmailTemplateUtil.compile(file), lastModified(file));
+            cache.put(file, e);
+        }
+        return e.template;
+    }
+
+    private static long lastModified(String file) {
+        try {
+            URL url = EmailTemplateUtil.resource(file);
+            return url != null ? url.openConnection().getLastModified() : 0;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    // ================== Inner Class ==================
+
+    private static class Entry {
+        final String file;
+        final CompiledTemplate template;
+        final long modified;
+        volatile long checkedAt = System.currentTimeMillis();
+
+        Entry(String file, CompiledTemplate template, long modified) {
+            this.file = file;
+            this.template = template;
+            this.modified = modified;
+        }
+
+        boolean isStale(long intervalMs) {
+            long now = System.currentTimeMillis();
+            if (now - checkedAt < intervalMs) return false;
+            checkedAt = now;
+            return lastModified(file) != modified;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.sendmail.suppression;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Set of 64-bit fingerprints in a memory-mapped file: an open-addressing
+ * table with linear probing, kept between a quarter and half full. An
+ * entry costs 16-32 bytes outside the heap, whatever the set size.
+ *
+ * Lookups take no lock: slots are read with acquire semantics and written
+ * with release semantics, and a resize publishes a complete new table.
+ * Adds and removes are serialised by one lock. Removed entries leave a
+ * tombstone so probe chains stay intact; resizing drops them.
+ *
+ * Layout: a 32-byte header (magic, capacity, size, tombstones), then the
+ * slots. The header is updated with every change, so the file is always
+ * openable; force() makes it durable.
+ */
+final class FingerprintSet implements AutoCloseable {
+
+    private static final long MAGIC = 0x5355505052455331L; // "SUPPRES1"
+    private static final int HEADER = 32;
+    private static final int MIN_CAPACITY = 1 << 14;
+    private static final int MAX_CAPACITY = 1 << 27; // slots; keeps the file under 2 GB
+
+    private static final long EMPTY = 0;
+    private static final long TOMBSTONE = 1;
+
+    private static final VarHandle SLOT =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final File file;
+    private final boolean isNew;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Table table;
+
+    private FingerprintSet(File file, Table table, boolean isNew) {
+        this.file = file;
+        this.table = table;
+        this.isNew = isNew;
+    }
+
+    /**
+     * Opens the set stored in the file. A missing file, or one that is not
+     * a complete table, is replaced by an empty set; {@link #isNew} tells.
+     */
+    static FingerprintSet open(File file) throws IOException {
+        Table t = file.exists() ? Table.map(file) : null;
+        if (t != null && t.buf.getLong(0) == MAGIC) {
+            return new FingerprintSet(file, t, false);
+        }
+        return new FingerprintSet(file, Table.create(file, MIN_CAPACITY), true);
+    }
+
+    /** True if open() had to create the table (nothing usable was on disk). */
+    boolean isNew() {
+        return isNew;
+    }
+
+    /** Fingerprint of an address: case and surrounding blanks ignored, no allocation. */
+    static long fingerprint(String address) {
+        int start = 0;
+        int end = address.length();
+        while (start < end && address.charAt(start) <= ' ') start++;
+        while (end > start && address.charAt(end - 1) <= ' ') end--;
+
+        long h = 0xcbf29ce484222325L; // FNV-1a over UTF-16 units, then a 64-bit finaliser
+        for (int i = start; i < end; i++) {
+            char c = address.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            } else if (c >= 0x80) {
+                c = Character.toLowerCase(c);
+            }
+            h = (h ^ c) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == EMPTY || h == TOMBSTONE ? h + 2 : h;
+    }
+
+    // ---------------- READ ----------------
+
+    boolean contains(long fp) {
+        Table t = table;
+        int i = (int) fp & t.mask;
+        for (int n = 0; n < t.capacity; n++) {
+            long v = (long) SLOT.getAcquire(t.buf, offset(i));
+            if (v == fp) return true;
+            if (v == EMPTY) return false;
+            i = (i + 1) & t.mask;
+        }
+        return false;
+    }
+
+    int size() {
+        return (int) table.buf.getLong(16);
+    }
+
+    int capacity() {
+        return table.capacity;
+    }
+
+    /** Calls the visitor with every fingerprint in the set. */
+    void forEach(LongConsumer visitor) {
+        Table t = table;
+        for (int i = 0; i < t.capacity; i++) {
+            long v = (long) SLOT.getAcquire(t.buf, offset(i));
+            if (v != EMPTY && v != TOMBSTONE) visitor.accept(v);
+        }
+    }
+
+    // ---------------- WRITE ----------------
+
+    /** True if the fingerprint was not in the set yet. */
+    boolean add(long fp) throws IOException {
+        writeLock.lock();
+        try {
+            Table t = table;
+            long size = t.buf.getLong(16);
+            long tombstones = t.buf.getLong(24);
+            if ((size + tombstones + 1) * 2 > t.capacity) {
+                t = resize(size);
+                tombstones = 0;
+            }
+
+            int i = (int) fp & t.mask;
+            int reuse = -1;
+            while (true) {
+                long v = (long) SLOT.getAcquire(t.buf, offset(i));
+                if (v == fp) return false;
+                if (v == TOMBSTONE && reuse < 0) reuse = i;
+                if (v == EMPTY) break;
+                i = (i + 1) & t.mask;
+            }
+            if (reuse >= 0) {
+                i = reuse;
+                t.buf.putLong(24, tombstones - 1);
+            }
+            SLOT.setRelease(t.buf, offset(i), fp);
+            t.buf.putLong(16, size + 1);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** True if the fingerprint was in the set. */
+    boolean remove(long fp) {
+        writeLock.lock();
+        try {
+            Table t = table;
+            int i = (int) fp & t.mask;
+            for (int n = 0; n < t.capacity; n++) {
+                long v = (long) SLOT.getAcquire(t.buf, offset(i));
+                if (v == EMPTY) return false;
+                if (v == fp) {
+                    SLOT.setRelease(t.buf, offset(i), TOMBSTONE);
+                    t.buf.putLong(16, t.buf.getLong(16) - 1);
+                    t.buf.putLong(24, t.buf.getLong(24) + 1);
+                    return true;
+                }
+                i = (i + 1) & t.mask;
+            }
+            return false;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Writes the mapped pages to disk. */
+    void force() {
+        table.buf.force();
+    }
+
+    @Override
+    public void close() {
+        force();
+    }
+
+    // ---------------- HELPERS ----------------
+
+    /**
+     * Copies the live entries into a table sized for twice the current
+     * count, written beside the file and moved over it, then published.
+     * Readers keep using the old mapping until they see the new one.
+     */
+    private Table resize(long size) throws IOException {
+        int capacity = MIN_CAPACITY;
+        while (capacity < (size + 1) * 4 && capacity < MAX_CAPACITY) capacity <<= 1;
+        if ((size + 1) * 2 > capacity) throw new IOException("Suppression list full");
+
+        File tmp = new File(file.getParentFile(), file.getName() + ".resize");
+        Table next = Table.create(tmp, capacity);
+        Table old = table;
+        long copied = 0;
+        for (int i = 0; i < old.capacity; i++) {
+            long v = old.buf.getLong(offset(i));
+            if (v == EMPTY || v == TOMBSTONE) continue;
+            int j = (int) v & next.mask;
+            while (next.buf.getLong(offset(j)) != EMPTY) j = (j + 1) & next.mask;
+            next.buf.putLong(offset(j), v);
+            copied++;
+        }
+        next.buf.putLong(16, copied);
+        next.buf.force();
+
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        table = next;
+        return next;
+    }
+
+    private static int offset(int slot) {
+        return HEADER + (slot << 3);
+    }
+
+    // ================== Inner Class ==================
+
+    private static final class Table {
+        final MappedByteBuffer buf;
+        final int capacity;
+        final int mask;
+
+        private Table(MappedByteBuffer buf, int capacity) {
+            this.buf = buf;
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+        }
+
+        static Table create(File file, int capacity) throws IOException {
+            try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0,
+                        HEADER + ((long) capacity << 3));
+                buf.order(ByteOrder.LITTLE_ENDIAN);
+                buf.putLong(8, capacity);
+                buf.putLong(0, MAGIC);
+                return new Table(buf, capacity);
+            }
+        }
+
+        /** Maps an existing file; null if it is not a complete table. */
+        static Table map(File file) throws IOException {
+            try (FileChannel ch = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (ch.size() < HEADER) return null;
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size());
+                buf.order(ByteOrder.LITTLE_ENDIAN);
+                long capacity = buf.getLong(8);
+                if (capacity < MIN_CAPACITY || capacity > MAX_CAPACITY || Long.bitCount(capacity) != 1
+                        || ch.size() != HEADER + (capacity << 3)) {
+                    return null;
+                }
+                return new Table(buf, (int) capacity);
+            }
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.sendmail.suppression;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.sendmail.ingest.ColumnMapping;
+import com.sendmail.ingest.RecipientSource;
+import com.sendmail.ingest.SheetPreview;
+import com.sendmail.writeback.CsvReport;
+
+/**
+ * Addresses that are never sent to again, across jobs.
+ *
+ * Lookups go to a memory-mapped fingerprint set (suppression.idx), so
+ * millions of addresses cost no heap and a check is a lock-free probe.
+ * The addresses themselves, with reason and time, are appended to
+ * suppression.log; export reads them from there, and the index is
+ * rebuilt from it if lost. Rows whose send was rejected because of the
+ * address are added automatically.
+ */
+@Component
+public class SuppressionList {
+
+    private static final Logger log = LoggerFactory.getLogger(SuppressionList.class);
+
+    /** Status of a row skipped because its address is suppressed. */
+    public static final String STATUS = "FAILED: Suppressed address";
+
+    // Brevo 400 messages about the recipient itself; anything else in the
+    // request (sender, attachment, template) must not suppress anyone
+    private static final String[] RECIPIENT_ERRORS = {
+            "is not valid in to",
+            "invalid email address",
+            "recipient is blocked",
+            "recipient blocked",
+            "contact is blacklisted",
+            "blacklisted recipient",
+            "unsubscribed"
+    };
+
+    // Addresses parsed per lock hold during an import
+    private static final int IMPORT_CHUNK = 1000;
+
+    @Value("${sendmail.suppression.enabled:true}")
+    private boolean enabled;
+
+    @Value("${sendmail.suppression.dir:}")
+    private String dir;
+
+    @Value("${sendmail.suppression.auto-add:true}")
+    private boolean autoAdd;
+
+    // Serialises changes so index and log agree; lookups do not take it
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private FingerprintSet set;
+    private File indexFile;
+    private File logFile;
+    private Writer logWriter;
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!enabled) return;
+
+        File d = dir == null || dir.isBlank()
+                ? new File(System.getProperty("java.io.tmpdir"), "sendmail-suppression")
+                : new File(dir);
+        d.mkdirs();
+
+        indexFile = new File(d, "suppression.idx");
+        logFile = new File(d, "suppression.log");
+
+        set = FingerprintSet.open(indexFile);
+        // A missing, truncated or corrupt index comes back empty: refill it
+        if (set.isNew() && logFile.exists()) replayLog();
+
+        logWriter = Files.newBufferedWriter(logFile.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        log.info("Suppression list: {} addresses", set.size());
+    }
+
+    @PreDestroy
+    void close() {
+        if (set == null) return;
+        lock.lock();
+        try {
+            logWriter.close();
+        } catch (IOException ignored) {
+        } finally {
+            set.close();
+            lock.unlock();
+        }
+    }
+
+    // ---------------- LOOKUP ----------------
+
+    /** True if the address must not be sent to. Lock-free. */
+    public boolean contains(String email) {
+        return set != null && email != null && !email.isBlank()
+                && set.contains(FingerprintSet.fingerprint(email));
+    }
+
+    // ---------------- CHANGES ----------------
+
+    /** True if the address was not suppressed yet. */
+    public boolean add(String email, String reason) throws IOException {
+        if (set == null) return false;
+        lock.lock();
+        try {
+            boolean added = addLocked(email, reason);
+            logWriter.flush();
+            return added;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** True if the address was suppressed. */
+    public boolean remove(String email) throws IOException {
+        if (set == null) return false;
+        lock.lock();
+        try {
+            if (!set.remove(FingerprintSet.fingerprint(email))) return false;
+            append('D', email, "");
+            logWriter.flush();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Suppresses the address of a row whose final failure blames the
+     * recipient (a Brevo 400 naming a recipient-level error, an SMTP 5xx
+     * to RCPT TO). Other failures are ignored.
+     */
+    public void onFailure(String email, String status) {
+        if (!autoAdd || set == null || email == null || email.isBlank()) return;
+        if (!isAddressFailure(status)) return;
+        try {
+            if (add(email, status)) log.info("Suppressed {}: {}", email, status);
+        } catch (IOException e) {
+            log.warn("Suppression write failed: {}", e.getMessage());
+        }
+    }
+
+    static boolean isAddressFailure(String status) {
+        if (status == null) return false;
+        // SMTP: a permanent refusal of RCPT TO
+        if (status.startsWith("FAILED: SMTP failed (5")) return status.contains("): recipient rejected:");
+        if (!status.startsWith("FAILED: Brevo API failed (400)")) return false;
+        String lower = status.toLowerCase(Locale.ROOT);
+        if (lower.contains("sender")) return false;
+        for (String error : RECIPIENT_ERRORS) {
+            if (lower.contains(error)) return true;
+        }
+        return false;
+    }
+
+    // ---------------- IMPORT / EXPORT ----------------
+
+    /**
+     * Adds every valid address of a recipient list (xlsx, csv or ndjson),
+     * from its detected email column. Returns how many were new.
+     */
+    public int importFrom(File file, String reason) throws Exception {
+        if (set == null) return 0;
+        int col = SheetPreview.read(file, false).getMapping().email();
+        int[] added = {0};
+        List<String> chunk = new ArrayList<>(IMPORT_CHUNK);
+
+        // Parsed without the lock; it is only held to insert each chunk,
+        // so failures recorded by running jobs are not held up
+        try (RecipientSource source = RecipientSource.open(file)) {
+            source.read((rowNum, cells) -> {
+                if (rowNum == 0 || col >= cells.length) return;
+                String email = cells[col];
+                if (!ColumnMapping.isEmail(email) || contains(email)) return;
+                chunk.add(email);
+                if (chunk.size() >= IMPORT_CHUNK) added[0] += insert(chunk, reason);
+            });
+        }
+        added[0] += insert(chunk, reason);
+
+        lock.lock();
+        try {
+            set.force();
+        } finally {
+            lock.unlock();
+        }
+        return added[0];
+    }
+
+    /**
+     * Writes the suppressed addresses as CSV (Email, Reason, SuppressedAt),
+     * each once, with the reason it was first suppressed for. Duplicates
+     * are filtered through a temporary fingerprint set, not the heap.
+     */
+    public void exportTo(OutputStream out) throws IOException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+        w.write("Email,Reason,SuppressedAt\n");
+        if (set == null) {
+            w.flush();
+            return;
+        }
+
+        lock.lock();
+        try {
+            logWriter.flush();
+        } finally {
+            lock.unlock();
+        }
+
+        File seenFile = File.createTempFile("suppression-export-", ".idx");
+        try (FingerprintSet seen = FingerprintSet.open(seenFile);
+             BufferedReader in = Files.newBufferedReader(logFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] f = line.split("\t", -1);
+                if (f.length < 4 || !"A".equals(f[0])) continue;
+
+                long fp = FingerprintSet.fingerprint(f[1]);
+                if (!set.contains(fp) || !seen.add(fp)) continue;
+
+                CsvReport.quoted(w, f[1]);
+                w.write(',');
+                CsvReport.quoted(w, f[2]);
+                w.write(',');
+                CsvReport.quoted(w, f[3]);
+                w.write('\n');
+            }
+        } finally {
+            seenFile.delete();
+        }
+        w.flush();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", set != null);
+        m.put("autoAdd", autoAdd);
+        if (set != null) {
+            m.put("addresses", set.size());
+            m.put("slots", set.capacity());
+            m.put("indexBytes", indexFile.length());
+            m.put("logBytes", logFile.length());
+        }
+        return m;
+    }
+
+    // ---------------- HELPERS ----------------
+
+    private int insert(List<String> emails, String reason) throws IOException {
+        if (emails.isEmpty()) return 0;
+        int added = 0;
+        lock.lock();
+        try {
+            for (String email : emails) {
+                if (addLocked(email, reason)) added++;
+            }
+            logWriter.flush();
+        } finally {
+            lock.unlock();
+        }
+        emails.clear();
+        return added;
+    }
+
+    private boolean addLocked(String email, String reason) throws IOException {
+        if (!set.add(FingerprintSet.fingerprint(email))) return false;
+        append('A', email, reason);
+        return true;
+    }
+
+    /** One log line: op, address, reason, time; tabs and line breaks blanked. */
+    private void append(char op, String email, String reason) throws IOException {
+        logWriter.write(op);
+        logWriter.write('\t');
+        logWriter.write(clean(email.trim()));
+        logWriter.write('\t');
+        logWriter.write(clean(reason != null ? reason : ""));
+        logWriter.write('\t');
+        logWriter.write(Instant.now().toString());
+        logWriter.write('\n');
+    }
+
+    private static String clean(String s) {
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) < ' ') {
+                if (sb == null) sb = new StringBuilder(s);
+                sb.setCharAt(i, ' ');
+            }
+        }
+        return sb != null ? sb.toString() : s;
+    }
+
+    /** Rebuilds a lost or unreadable index from the log. */
+    private void replayLog() throws IOException {
+        int n = 0;
+        try (BufferedReader in = Files.newBufferedReader(logFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] f = line.split("\t", -1);
+                if (f.length < 2) continue;
+                long fp = FingerprintSet.fingerprint(f[1]);
+                if ("A".equals(f[0])) {
+                    set.add(fp);
+                } else if ("D".equals(f[0])) {
+                    set.remove(fp);
+                }
+                n++;
+            }
+        }
+        set.force();
+        log.info("Suppression index rebuilt from {} log records", n);
+    }
+}
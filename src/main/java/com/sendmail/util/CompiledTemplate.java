@@ -0,0 +1,85 @@
+package com.sendmail.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A template parsed once into literal text and {{placeholder}} slots.
+ * Rendering appends the pieces to a caller-supplied buffer in one pass.
+ *
+ * Placeholder names are normalized (lower case, letters and digits only),
+ * so {{Flat No}}, {{flat_no}} and {{flatNo}} all mean the same variable.
+ * Placeholders without a value are left in the output untouched.
+ */
+public final class CompiledTemplate {
+
+    private final String[] literals;   // one more than keys
+    private final String[] keys;       // normalized variable names
+    private final String[] raw;        // original "{{...}}" text
+    private final int literalLength;
+
+    private CompiledTemplate(List<String> literals, List<String> keys, List<String> raw) {
+        this.literals = literals.toArray(new String[0]);
+        this.keys = keys.toArray(new String[0]);
+        this.raw = raw.toArray(new String[0]);
+
+        int len = 0;
+        for (String l : this.literals) len += l.length();
+        this.literalLength = len;
+    }
+
+    public static CompiledTemplate compile(String text) {
+        List<String> literals = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<String> raw = new ArrayList<>();
+
+        int pos = 0;
+        while (true) {
+            int open = text.indexOf("{{", pos);
+            int close = open < 0 ? -1 : text.indexOf("}}", open + 2);
+            if (close < 0) break;
+
+            literals.add(text.substring(pos, open));
+            keys.add(normalizeKey(text.substring(open + 2, close)));
+            raw.add(text.substring(open, close + 2));
+            pos = close + 2;
+        }
+        literals.add(text.substring(pos));
+
+        return new CompiledTemplate(literals, keys, raw);
+    }
+
+    /** True if the template has no placeholders. */
+    public boolean isConstant() {
+        return keys.length == 0;
+    }
+
+    /** The text of a constant template. */
+    public String constant() {
+        return literals[0];
+    }
+
+    /** Rough output size, to pre-size buffers. */
+    public int estimatedLength() {
+        return literalLength + keys.length * 16;
+    }
+
+    public void renderTo(StringBuilder out, Function<String, String> vars) {
+        out.append(literals[0]);
+        for (int i = 0; i < keys.length; i++) {
+            String value = vars.apply(keys[i]);
+            out.append(value != null ? value : raw[i]);
+            out.append(literals[i + 1]);
+        }
+    }
+
+    public static String normalizeKey(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isLetterOrDigit(c)) sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+}
@@ -1,25 +1,41 @@
 package com.sendmail.util;
 
 import java.io.InputStream;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 public class EmailTemplateUtil {
 
     public static String load(String file, Map<String, String> vars) throws Exception {
-        InputStream is = EmailTemplateUtil.class
-                .getClassLoader()
-                .getResourceAsStream("templates/" + file);
+        StringBuilder sb = new StringBuilder();
+        compile(file).renderTo(sb, key -> {
+            for (var e : vars.entrySet()) {
+                if (CompiledTemplate.normalizeKey(e.getKey()).equals(key)) return e.getValue();
+            }
+            return null;
+        });
+        return sb.toString();
+    }
 
-        if (is == null) throw new RuntimeException("Template not found");
+    /**
+     * Reads and parses a template from classpath:templates/.
+     */
+    public static CompiledTemplate compile(String file) throws Exception {
+        try (InputStream is = EmailTemplateUtil.class
+                .getClassLoader()
+                .getResourceAsStream("templates/" + file)) {
 
-        String content = new String(is.readAllBytes(), StandardCharsets.UTF_8);
-        // 🔥 REMOVE ALL LEADING / TRAILING WHITESPACE
-        content = content.trim();
+            if (is == null) throw new RuntimeException("Template not found");
 
-        for (var e : vars.entrySet()) {
-            content = content.replace("{{" + e.getKey() + "}}", e.getValue());
+            String content = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+            // 🔥 REMOVE ALL LEADING / TRAILING WHITESPACE
+            return CompiledTemplate.compile(content.trim());
         }
-        return content;
+    }
+
+    /** Location of a template resource, or null if missing. */
+    public static URL resource(String file) {
+        return EmailTemplateUtil.class.getClassLoader().getResource("templates/" + file);
     }
 }
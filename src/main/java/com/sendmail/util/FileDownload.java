@@ -0,0 +1,121 @@
+package com.sendmail.util;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Serves a file without loading it: ETag / Last-Modified with 304,
+ * single byte ranges with 206 / 416, and the body sent by the container's
+ * sendfile when available (zero copy), else by FileChannel.transferTo.
+ */
+public final class FileDownload {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private FileDownload() {
+    }
+
+    public static void serve(File file, MediaType type, String filename,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(file, type, filename, request, response, true);
+    }
+
+    /**
+     * For a file the caller deletes as soon as this returns: the body is
+     * always written here, since the container's sendfile would open the
+     * file by path only afterwards.
+     */
+    public static void serveTemporary(File file, MediaType type, String filename,
+                                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(file, type, filename, request, response, false);
+    }
+
+    private static void serve(File file, MediaType type, String filename,
+                              HttpServletRequest request, HttpServletResponse response,
+                              boolean sendfile) throws IOException {
+
+        long length = file.length();
+        long lastModified = file.lastModified();
+        String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        // Sets ETag / Last-Modified, answers 304 if the client's copy is current
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        response.setContentType(type.toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"" + FileNames.safe(filename) + "\"");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        long start = 0;
+        long end = length - 1;
+        HttpRange range = range(request, etag);
+        if (range != null) {
+            if (length == 0 || range.getRangeStart(length) >= length) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            start = range.getRangeStart(length);
+            end = range.getRangeEnd(length);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod()) || count <= 0) return;
+
+        if (sendfile && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat writes the file from the kernel once we return
+            request.setAttribute(SENDFILE_FILENAME, file.getAbsolutePath());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long pos = start;
+            while (pos <= end) {
+                pos += in.transferTo(pos, end + 1 - pos, out);
+            }
+        }
+    }
+
+    /**
+     * The requested range, or null to send the whole file: no Range header,
+     * an If-Range that no longer matches, or several ranges (allowed by the
+     * spec; clients then get the full body).
+     */
+    private static HttpRange range(HttpServletRequest request, String etag) {
+        String header = request.getHeader(HttpHeaders.RANGE);
+        if (header == null) return null;
+
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.equals(etag)) return null;
+
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(header);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.sendmail.util;
+
+/**
+ * File names as they are shown to recipients and browsers (attachment
+ * names, Content-Disposition): control characters (CR / LF included),
+ * path separators and quotes become '_', so a name can neither break a
+ * header nor point into a directory.
+ */
+public final class FileNames {
+
+    private static final String FALLBACK = "attachment";
+
+    private FileNames() {
+    }
+
+    public static String safe(String name) {
+        if (name == null || name.isBlank()) return FALLBACK;
+
+        StringBuilder sb = null;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < 0x20 || c == 0x7f || c == '/' || c == '\\' || c == '"') {
+                if (sb == null) sb = new StringBuilder(name);
+                sb.setCharAt(i, '_');
+            }
+        }
+        String safe = sb != null ? sb.toString().trim() : name.trim();
+
+        // "." and ".." name a directory, not a file
+        return safe.isEmpty() || safe.equals(".") || safe.equals("..") ? FALLBACK : safe;
+    }
+}
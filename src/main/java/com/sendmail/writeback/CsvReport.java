@@ -0,0 +1,57 @@
+package com.sendmail.writeback;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import com.sendmail.job.JobStatus;
+
+/**
+ * CSV report of a job (Row, Email, Status), written row by row straight
+ * from the job's row table; nothing is collected in memory first.
+ */
+public final class CsvReport {
+
+    private CsvReport() {
+    }
+
+    /** Writes the report, newest row first; does not close the stream. */
+    public static void write(JobStatus job, OutputStream out) throws IOException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+        w.write("Row,Email,Status\n");
+        try {
+            job.forEachRow(true, r -> {
+                try {
+                    w.write(Integer.toString(r.getRow()));
+                    w.write(',');
+                    quoted(w, r.getEmail());
+                    w.write(',');
+                    quoted(w, r.getStatus());
+                    w.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // client went away
+        }
+        w.flush();
+    }
+
+    /** RFC 4180 field: always quoted, embedded quotes doubled. */
+    public static void quoted(Writer w, String value) throws IOException {
+        w.write('"');
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') w.write('"');
+                w.write(c);
+            }
+        }
+        w.write('"');
+    }
+}
@@ -0,0 +1,203 @@
+package com.sendmail.writeback;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+
+import com.sendmail.ingest.SourceFormat;
+import com.sendmail.job.JobStatus;
+import com.sendmail.job.JobStatusStore;
+
+/**
+ * Write-back of row outcomes for a job.
+ *
+ * Outcomes live in memory (the job's row table) and are checkpointed to
+ * {@code status-<jobId>.tsv} in coalesced batches. The result file
+ * {@code result-<jobId>.<ext>}, in the upload's format (workbook, CSV or
+ * NDJSON), is exported once at job end and then served as is; a download
+ * while the job is still running gets its own snapshot instead.
+ */
+@Component
+public class ExcelWriteBackService {
+
+    private static final Logger log = LoggerFactory.getLogger(ExcelWriteBackService.class);
+
+    @Autowired
+    private JobStatusStore jobStatusStore;
+
+    @Value("${sendmail.writeback.flush-rows:500}")
+    private int flushRows;
+
+    @Value("${sendmail.writeback.flush-interval-ms:5000}")
+    private long flushIntervalMs;
+
+    private final Map<String, JobWriteBack> jobs = new ConcurrentHashMap<>();
+
+    /** Serializes result rebuilds of jobs not tracked here (rare: once per job after a restart). */
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+
+    public void open(String jobId, File source) {
+        File dir = source.getAbsoluteFile().getParentFile();
+        jobs.put(jobId, new JobWriteBack(
+                source,
+                new StatusCheckpoint(new File(dir, "status-" + jobId + ".tsv"),
+                        flushRows, flushIntervalMs),
+                resultOf(dir, jobId, source)
+        ));
+    }
+
+    public void record(String jobId, int row, String status) {
+        JobWriteBack wb = jobs.get(jobId);
+        if (wb == null) return;
+
+        try {
+            wb.checkpoint.record(row, status);
+        } catch (Exception e) {
+            log.warn("Checkpoint write failed for {}: {}", jobId, e.getMessage());
+        }
+    }
+
+    /**
+     * Final checkpoint flush and result export. Called once when the job ends.
+     */
+    public void finish(String jobId) {
+        JobWriteBack wb = jobs.get(jobId);
+        if (wb == null) return;
+
+        try {
+            wb.checkpoint.flush();
+            export(jobId, wb);
+            wb.finished = true;
+        } catch (Exception e) {
+            log.warn("Result export failed for {}: {}", jobId, e.getMessage());
+        }
+    }
+
+    /**
+     * Drops the job and deletes its checkpoint and result files
+     * (called when the job's retention ends).
+     */
+    public void forget(String jobId, File source) {
+        JobWriteBack wb = jobs.remove(jobId);
+        File dir = wb != null
+                ? wb.source.getAbsoluteFile().getParentFile()
+                : source != null ? source.getAbsoluteFile().getParentFile() : null;
+        if (dir == null) return;
+
+        new File(dir, "status-" + jobId + ".tsv").delete();
+        for (SourceFormat format : SourceFormat.values()) {
+            new File(dir, "result-" + jobId + format.extension()).delete();
+        }
+    }
+
+    /**
+     * The result file for download, or null if nothing is known about the
+     * job. A running job gets a snapshot exported for this request alone
+     * ({@link Download#temporary()}), which the caller deletes once it is
+     * sent: the job's own result file is never replaced under a download.
+     */
+    public Download download(String jobId) throws Exception {
+        JobWriteBack wb = jobs.get(jobId);
+
+        if (wb == null) {
+            // Not tracked in this process: rebuild from upload + checkpoint
+            File source = jobStatusStore.getExcel(jobId);
+            if (source == null || !source.exists()) return null;
+
+            File dir = source.getAbsoluteFile().getParentFile();
+            File checkpoint = new File(dir, "status-" + jobId + ".tsv");
+            File result = resultOf(dir, jobId, source);
+
+            // Exported once; again only if the checkpoint is newer
+            rebuildLock.lock();
+            try {
+                if (!result.exists() || result.lastModified() < checkpoint.lastModified()) {
+                    Map<Integer, String> outcomes = StatusCheckpoint.read(checkpoint);
+                    exportResult(source, result, outcomes::get);
+                }
+            } finally {
+                rebuildLock.unlock();
+            }
+            return new Download(result, false);
+        }
+
+        if (!wb.finished) {
+            File snapshot = File.createTempFile("result-" + jobId + "-",
+                    SourceFormat.of(wb.source.getName()).extension(),
+                    wb.result.getAbsoluteFile().getParentFile());
+            try {
+                exportResult(wb.source, snapshot, statusLookup(jobId));
+            } catch (Exception e) {
+                snapshot.delete();
+                throw e;
+            }
+            return new Download(snapshot, true);
+        }
+
+        if (!wb.result.exists()) {
+            wb.exportLock.lock();
+            try {
+                if (!wb.result.exists()) exportResult(wb.source, wb.result, statusLookup(jobId));
+            } finally {
+                wb.exportLock.unlock();
+            }
+        }
+        return new Download(wb.result, false);
+    }
+
+    private void export(String jobId, JobWriteBack wb) throws Exception {
+        wb.exportLock.lock();
+        try {
+            exportResult(wb.source, wb.result, statusLookup(jobId));
+        } finally {
+            wb.exportLock.unlock();
+        }
+    }
+
+    private static File resultOf(File dir, String jobId, File source) {
+        return new File(dir, "result-" + jobId + SourceFormat.of(source.getName()).extension());
+    }
+
+    /** Writes the result in the same format as the upload. */
+    private static void exportResult(File source, File result, IntFunction<String> statusOf)
+            throws Exception {
+        switch (SourceFormat.of(source.getName())) {
+            case CSV -> ResultCsvExporter.export(source, result, statusOf);
+            case NDJSON -> ResultNdjsonExporter.export(source, result, statusOf);
+            default -> ResultWorkbookExporter.export(source, result, statusOf);
+        }
+    }
+
+    private IntFunction<String> statusLookup(String jobId) {
+        JobStatus job = jobStatusStore.getJob(jobId);
+        return row -> job != null ? job.statusOf(row) : null;
+    }
+
+    // ================== Inner Class ==================
+
+    /** A file to serve; temporary ones are deleted by the caller once sent. */
+    public record Download(File file, boolean temporary) {
+    }
+
+    private static class JobWriteBack {
+        final File source;
+        final StatusCheckpoint checkpoint;
+        final File result;
+        final ReentrantLock exportLock = new ReentrantLock();
+        volatile boolean finished;
+
+        JobWriteBack(File source, StatusCheckpoint checkpoint, File result) {
+            this.source = source;
+            this.checkpoint = checkpoint;
+            this.result = result;
+        }
+    }
+}
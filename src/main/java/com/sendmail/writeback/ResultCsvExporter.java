@@ -0,0 +1,74 @@
+package com.sendmail.writeback;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.function.IntFunction;
+
+import com.sendmail.ingest.CsvRowReader;
+
+/**
+ * Result file for a CSV upload: the uploaded rows copied record by record
+ * with a Status column set (an existing one is reused). Only the current
+ * row is in memory. Blank rows are dropped.
+ */
+public class ResultCsvExporter {
+
+    private static final String STATUS_HEADER = "Status";
+
+    public static void export(File source, File target, IntFunction<String> statusOf)
+            throws Exception {
+
+        // Unique per export: concurrent exports of one job never share a part file
+        File tmp = Files.createTempFile(target.getAbsoluteFile().getParentFile().toPath(),
+                target.getName() + ".", ".part").toFile();
+
+        try {
+            try (CsvRowReader reader = new CsvRowReader(source);
+                 Writer out = new BufferedWriter(new OutputStreamWriter(
+                         new FileOutputStream(tmp), StandardCharsets.UTF_8), 64 * 1024)) {
+
+                int[] statusCol = {-1};
+
+                reader.read((rowNum, cells) -> {
+                    String status;
+                    if (rowNum == 0) {
+                        statusCol[0] = statusColumn(cells);
+                        status = STATUS_HEADER;
+                    } else {
+                        if (statusCol[0] < 0) statusCol[0] = Math.max(cells.length, 1);
+                        status = statusOf.apply(rowNum);
+                    }
+
+                    int width = Math.max(cells.length, statusCol[0] + 1);
+                    for (int c = 0; c < width; c++) {
+                        if (c > 0) out.write(',');
+                        if (c == statusCol[0]) {
+                            CsvReport.quoted(out, status);
+                        } else {
+                            CsvReport.quoted(out, c < cells.length ? cells[c] : "");
+                        }
+                    }
+                    out.write('\n');
+                });
+            }
+
+            Files.move(tmp.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp.toPath()); // left only if the export failed
+        }
+    }
+
+    private static int statusColumn(String[] header) {
+        for (int c = 0; c < header.length; c++) {
+            if (STATUS_HEADER.equalsIgnoreCase(header[c])) return c;
+        }
+        return header.length;
+    }
+}
@@ -0,0 +1,70 @@
+package com.sendmail.writeback;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.function.IntFunction;
+
+/**
+ * Result file for an NDJSON upload: every object copied, one per line,
+ * with a "status" field set (an existing status field of any case is
+ * overwritten). Objects are read one at a time. Row numbers follow
+ * NdjsonRowReader: row n is the n-th value in the file.
+ */
+public class ResultNdjsonExporter {
+
+    private static final String STATUS_FIELD = "status";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static void export(File source, File target, IntFunction<String> statusOf)
+            throws Exception {
+
+        // Unique per export: concurrent exports of one job never share a part file
+        File tmp = Files.createTempFile(target.getAbsoluteFile().getParentFile().toPath(),
+                target.getName() + ".", ".part").toFile();
+
+        try {
+            try (MappingIterator<JsonNode> values = MAPPER.readerFor(JsonNode.class).readValues(source);
+                 Writer out = new BufferedWriter(new OutputStreamWriter(
+                         new FileOutputStream(tmp), StandardCharsets.UTF_8), 64 * 1024)) {
+
+                int rowNum = 0;
+                while (values.hasNextValue()) {
+                    JsonNode node = values.nextValue();
+                    rowNum++;
+
+                    String status = statusOf.apply(rowNum);
+                    if (status != null && node instanceof ObjectNode obj) {
+                        obj.put(statusField(obj), status);
+                    }
+                    out.write(MAPPER.writeValueAsString(node));
+                    out.write('\n');
+                }
+            }
+
+            Files.move(tmp.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp.toPath()); // left only if the export failed
+        }
+    }
+
+    private static String statusField(ObjectNode obj) {
+        for (Iterator<String> names = obj.fieldNames(); names.hasNext(); ) {
+            String name = names.next();
+            if (STATUS_FIELD.equalsIgnoreCase(name)) return name;
+        }
+        return STATUS_FIELD;
+    }
+}
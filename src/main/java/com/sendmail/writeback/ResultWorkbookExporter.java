@@ -0,0 +1,153 @@
+package com.sendmail.writeback;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import com.sendmail.ingest.XlsxRowReader;
+
+/**
+ * Builds the downloadable result workbook: the uploaded sheet copied row by
+ * row (SAX in, SXSSF out) with a status column appended. Only a small row
+ * window is in memory, and all status cells share a fixed three-style palette.
+ * Numbers and dates are copied as stored, with their number format (one
+ * style per distinct format); other cells as their displayed text.
+ */
+public class ResultWorkbookExporter {
+
+    private static final String STATUS_HEADER = "Status";
+    private static final int ROW_WINDOW = 100;
+
+    public static void export(File source, File target, IntFunction<String> statusOf)
+            throws Exception {
+
+        // Unique per export: concurrent exports of one job never share a part file
+        File tmp = Files.createTempFile(target.getAbsoluteFile().getParentFile().toPath(),
+                target.getName() + ".", ".part").toFile();
+
+        try {
+            SXSSFWorkbook out = new SXSSFWorkbook(ROW_WINDOW);
+            try (XlsxRowReader reader = new XlsxRowReader(source)) {
+
+                Palette palette = new Palette(out);
+                Sheet sheet = out.createSheet("Sheet1");
+                int[] statusCol = {-1};
+
+                reader.read((rowNum, cells, numbers) -> {
+                    Row row = sheet.createRow(rowNum);
+                    for (int c = 0; c < cells.length; c++) {
+                        XlsxRowReader.NumericCell number = numbers[c];
+                        if (number != null) {
+                            Cell cell = row.createCell(c);
+                            cell.setCellValue(number.value());
+                            CellStyle style = palette.format(number.format());
+                            if (style != null) cell.setCellStyle(style);
+                        } else if (!cells[c].isEmpty()) {
+                            row.createCell(c).setCellValue(cells[c]);
+                        }
+                    }
+
+                    if (rowNum == 0) {
+                        statusCol[0] = statusColumn(cells);
+                        Cell h = row.createCell(statusCol[0]);
+                        h.setCellValue(STATUS_HEADER);
+                        h.setCellStyle(palette.header);
+                        return;
+                    }
+
+                    if (statusCol[0] < 0) statusCol[0] = Math.max(cells.length, 1);
+
+                    String status = statusOf.apply(rowNum);
+                    if (status == null) return;
+
+                    Cell cell = row.createCell(statusCol[0]);
+                    cell.setCellValue(status);
+                    if (status.startsWith("SENT")) {
+                        cell.setCellStyle(palette.sent);
+                    } else if (status.startsWith("FAILED")) {
+                        cell.setCellStyle(palette.failed);
+                    }
+                });
+
+                try (OutputStream os = new FileOutputStream(tmp)) {
+                    out.write(os);
+                }
+            } finally {
+                out.dispose(); // remove SXSSF temp files
+                out.close();
+            }
+
+            Files.move(tmp.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp.toPath()); // left only if the export failed
+        }
+    }
+
+    private static int statusColumn(String[] header) {
+        for (int c = 0; c < header.length; c++) {
+            if (STATUS_HEADER.equalsIgnoreCase(header[c])) return c;
+        }
+        return header.length;
+    }
+
+    // ---------------- STYLES ----------------
+
+    /** Created once per workbook; cells only reference these. */
+    private static class Palette {
+        final CellStyle header;
+        final CellStyle sent;
+        final CellStyle failed;
+
+        private final SXSSFWorkbook wb;
+        private final Map<String, CellStyle> formats = new HashMap<>();
+
+        Palette(SXSSFWorkbook wb) {
+            this.wb = wb;
+
+            Font bold = wb.createFont();
+            bold.setBold(true);
+            header = wb.createCellStyle();
+            header.setFont(bold);
+
+            sent = filled(wb, IndexedColors.LIGHT_GREEN, IndexedColors.DARK_GREEN);
+            failed = filled(wb, IndexedColors.ROSE, IndexedColors.DARK_RED);
+        }
+
+        /** Style carrying a copied number format; null for General (the default). */
+        CellStyle format(String format) {
+            if (format == null || "General".equals(format)) return null;
+            return formats.computeIfAbsent(format, f -> {
+                CellStyle style = wb.createCellStyle();
+                style.setDataFormat(wb.createDataFormat().getFormat(f));
+                return style;
+            });
+        }
+
+        private static CellStyle filled(SXSSFWorkbook wb, IndexedColors fill, IndexedColors text) {
+            Font font = wb.createFont();
+            font.setBold(true);
+            font.setColor(text.getIndex());
+
+            CellStyle style = wb.createCellStyle();
+            style.setFillForegroundColor(fill.getIndex());
+            style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+            style.setFont(font);
+            return style;
+        }
+    }
+}
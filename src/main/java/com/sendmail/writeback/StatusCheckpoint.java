@@ -0,0 +1,105 @@
+package com.sendmail.writeback;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only record of row outcomes for one job.
+ * Outcomes are buffered and written in coalesced batches (every N rows or
+ * every T ms, whichever comes first), so total write-back I/O is linear in
+ * the number of rows. One line per outcome: {@code row<TAB>status}.
+ */
+public class StatusCheckpoint {
+
+    private final File file;
+    private final int flushRows;
+    private final long flushIntervalMs;
+
+    // File I/O happens under this lock; a ReentrantLock does not pin virtual threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<String> pending = new ArrayList<>();
+    private long lastFlush = System.currentTimeMillis();
+
+    public StatusCheckpoint(File file, int flushRows, long flushIntervalMs) {
+        this.file = file;
+        this.flushRows = Math.max(1, flushRows);
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void record(int row, String status) throws IOException {
+        lock.lock();
+        try {
+            pending.add(row + "\t" + singleLine(status));
+
+            if (pending.size() >= flushRows
+                    || System.currentTimeMillis() - lastFlush >= flushIntervalMs) {
+                flush();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            lastFlush = System.currentTimeMillis();
+            if (pending.isEmpty()) return;
+
+            try (Writer w = Files.newBufferedWriter(
+                    file.toPath(),
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND)) {
+                for (String line : pending) {
+                    w.write(line);
+                    w.write('\n');
+                }
+            }
+            pending.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads a checkpoint file back; the last outcome recorded for a row wins.
+     */
+    public static Map<Integer, String> read(File file) throws IOException {
+        Map<Integer, String> outcomes = new HashMap<>();
+        if (file == null || !file.exists()) return outcomes;
+
+        try (BufferedReader r = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab <= 0) continue;
+                try {
+                    outcomes.put(Integer.parseInt(line.substring(0, tab)), line.substring(tab + 1));
+                } catch (NumberFormatException ignored) {
+                    // torn line from an interrupted flush
+                }
+            }
+        }
+        return outcomes;
+    }
+
+    private static String singleLine(String s) {
+        if (s == null) return "";
+        return s.replace('\n', ' ').replace('\r', ' ').replace('\t', ' ');
+    }
+}
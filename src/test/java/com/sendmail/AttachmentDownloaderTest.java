@@ -0,0 +1,33 @@
+package com.sendmail;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AttachmentDownloaderTest {
+
+    @Test
+    void extractsIdsFromBothLinkFormats() {
+        assertEquals("1AbC_d-9", AttachmentDownloader.extractFileId(
+                "https://drive.google.com/file/d/1AbC_d-9/view?usp=sharing"));
+        assertEquals("1AbC_d-9", AttachmentDownloader.extractFileId(
+                "https://drive.google.com/uc?export=download&id=1AbC_d-9"));
+        assertNull(AttachmentDownloader.extractFileId("https://example.com/bill.pdf"));
+    }
+
+    @Test
+    void rejectsIdsThatCouldLeaveTheCacheDirectory() {
+        assertThrows(IllegalArgumentException.class, () -> AttachmentDownloader.extractFileId(
+                "https://drive.google.com/uc?id=..%2F..%2Fetc&x=1"));
+        assertThrows(IllegalArgumentException.class, () -> AttachmentDownloader.extractFileId(
+                "https://drive.google.com/uc?id=../../tmp/x"));
+        assertThrows(IllegalArgumentException.class, () -> AttachmentDownloader.extractFileId(
+                "https://drive.google.com/file/d/a\\b/view"));
+        assertThrows(IllegalArgumentException.class, () -> AttachmentDownloader.downloadTo(
+                "../escape", new File("unused")));
+    }
+}
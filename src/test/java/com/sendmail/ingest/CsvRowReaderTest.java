@@ -0,0 +1,40 @@
+package com.sendmail.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvRowReaderTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void estimatesRowsFromTheStartOfTheFile() throws Exception {
+        assertEquals(3, estimate("small.csv", 3));
+
+        int big = estimate("big.csv", 20_000); // well past the 64 KB sample
+        assertTrue(big > 18_000 && big < 22_000, "estimate " + big); // early rows are shorter
+    }
+
+    private int estimate(String name, int rows) throws Exception {
+        StringBuilder sb = new StringBuilder("Email,Name,Bill Link\n");
+        for (int i = 1; i <= rows; i++) {
+            sb.append("member").append(i).append("@example.com,Member ").append(i)
+                    .append(",https://drive.google.com/file/d/1AbC").append(i).append("/view\n");
+        }
+        File file = new File(dir, name);
+        Files.writeString(file.toPath(), sb);
+
+        try (CsvRowReader reader = new CsvRowReader(file)) {
+            int estimate = reader.estimatedDataRows();
+            assertEquals(rows, reader.countDataRows()); // the sample left the read position alone
+            return estimate;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.sendmail.ingest;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class XlsxRowReaderTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void estimatesRowsFromTheSheetDimensionWithoutReadingTheRows() throws Exception {
+        File file = new File(dir, "recipients.xlsx");
+        try (Workbook wb = new XSSFWorkbook(); FileOutputStream out = new FileOutputStream(file)) {
+            Sheet sheet = wb.createSheet("Members");
+            sheet.createRow(0).createCell(0).setCellValue("Email");
+            for (int i = 1; i <= 250; i++) {
+                if (i == 100) continue; // blank row: in the dimension, not in the count
+                Row row = sheet.createRow(i);
+                row.createCell(0).setCellValue("m" + i + "@example.com");
+                row.createCell(3).setCellValue(i);
+            }
+            wb.write(out);
+        }
+
+        try (XlsxRowReader reader = new XlsxRowReader(file)) {
+            assertEquals(250, reader.estimatedDataRows());
+            assertEquals(249, reader.countDataRows());
+        }
+    }
+}
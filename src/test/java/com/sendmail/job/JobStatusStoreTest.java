@@ -0,0 +1,64 @@
+package com.sendmail.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sendmail.ingest.ColumnMapping;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JobStatusStoreTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void archivedJobKeepsItsSourceAndFinishTimeAcrossARestart() {
+        File upload = new File(dir, "upload-job1.csv");
+        JobStatusStore first = store();
+
+        JobStatus job = first.createJob("job1");
+        first.registerExcel("job1", upload);
+        first.registerColumns("job1", new ColumnMapping(2, 0, 4));
+        first.registerTransport("job1", "smtp");
+        job.addOrUpdateRow(1, "a@example.com", "A", null, "SENT");
+        job.markDone();
+        first.markFinished("job1");
+        first.evictFinished(); // max-finished-in-memory=0: archived right away
+
+        assertEquals(1, first.stats().get("archivedJobs"));
+
+        JobStatusStore second = store();
+        assertEquals(upload, second.getExcel("job1"));
+        assertEquals(new ColumnMapping(2, 0, 4), second.getColumns("job1"));
+        assertEquals("smtp", second.getTransport("job1"));
+        assertNotNull(second.getSummary("job1").get("finishedAt"));
+        assertNull(second.getSummary("job1").get("upload"));
+
+        JobStatus loaded = second.getJob("job1");
+        assertEquals("SENT", loaded.statusOf(1));
+
+        // Its temp files stay until the job expires, however old they are
+        assertTrue(second.isKnown("job1"));
+        assertFalse(second.isKnown("other"));
+    }
+
+    private JobStatusStore store() {
+        JobStatusStore store = new JobStatusStore();
+        ReflectionTestUtils.setField(store, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(store, "maxFinishedInMemory", 0);
+        ReflectionTestUtils.setField(store, "memoryTtlMinutes", 30L);
+        ReflectionTestUtils.setField(store, "retentionHours", 168L);
+        ReflectionTestUtils.setField(store, "archiveDir", new File(dir, "archive").getPath());
+        ReflectionTestUtils.setField(store, "journalEnabled", false);
+        store.init();
+        return store;
+    }
+}
@@ -0,0 +1,28 @@
+package com.sendmail.job;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class JobStatusTest {
+
+    @Test
+    void statusJsonCarriesNoRowLists() throws Exception {
+        JobStatus job = new JobStatus("j1");
+        for (int i = 1; i <= 3; i++) {
+            job.addOrUpdateRow(i, "m" + i + "@example.com", "M" + i, null, "PROCESSING");
+        }
+        job.updateRowStatus(2, "FAILED: Brevo API failed (400): email is not valid");
+
+        JsonNode json = new ObjectMapper().valueToTree(job);
+
+        assertEquals(3, json.get("rowCount").asInt());
+        assertFalse(json.has("rowStatusList"));
+        assertFalse(json.has("allRowsNewestFirst"));
+        assertFalse(json.has("failedRows"));
+        assertEquals(1, job.failedRows().size());
+    }
+}
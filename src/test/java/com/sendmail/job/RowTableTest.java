@@ -0,0 +1,38 @@
+package com.sendmail.job;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RowTableTest {
+
+    @Test
+    void pagesMatchTheFullListingAtEveryOffset() {
+        RowTable table = new RowTable();
+        // Sparse rows across several pages, including a page with a gap and an absent page
+        List<Integer> rows = new ArrayList<>();
+        for (int r = 1; r < 1500; r += 3) rows.add(r);
+        for (int r = 3000; r < 3100; r++) rows.add(r);
+        for (int r : rows) table.put(r, "m" + r + "@example.com", "M" + r, null, "SENT");
+
+        for (boolean newestFirst : new boolean[]{false, true}) {
+            List<Integer> all = rowNumbers(table.all(newestFirst));
+            assertEquals(rows.size(), all.size());
+
+            for (int offset : new int[]{0, 1, 341, 342, 500, 599, 600, 601, 700}) {
+                List<Integer> expected = all.subList(Math.min(offset, all.size()), Math.min(offset + 50, all.size()));
+                assertEquals(expected, rowNumbers(table.page(offset, 50, newestFirst)),
+                        "offset " + offset + (newestFirst ? " newest first" : ""));
+            }
+        }
+    }
+
+    private static List<Integer> rowNumbers(List<JobStatus.RowStatus> page) {
+        List<Integer> out = new ArrayList<>(page.size());
+        for (JobStatus.RowStatus rs : page) out.add(rs.getRow());
+        return out;
+    }
+}
@@ -0,0 +1,27 @@
+package com.sendmail.pipeline;
+
+import com.sendmail.ingest.RecipientRow;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RowTaskTest {
+
+    @Test
+    void aSettledRowKeepsItsOutcome() {
+        RowTask sent = task();
+        sent.setStatus("SENT");
+        sent.fail(new Exception("later group failed"));
+        sent.cancel();
+        assertEquals("SENT", sent.getStatus());
+
+        RowTask open = task();
+        open.fail(new Exception("boom"));
+        open.cancel();
+        assertEquals("FAILED: boom", open.getStatus());
+    }
+
+    private static RowTask task() {
+        return new RowTask(new RecipientRow(1, "a@example.com", "A", null, new String[0]));
+    }
+}
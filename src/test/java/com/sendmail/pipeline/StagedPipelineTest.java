@@ -0,0 +1,108 @@
+package com.sendmail.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StagedPipelineTest {
+
+    @Test
+    void asyncCompletionsNeverBlockTheCompletingThread() throws Exception {
+        int items = 50;
+        ExecutorService executor = Executors.newCachedThreadPool();
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        CountDownLatch allStarted = new CountDownLatch(items);
+        CountDownLatch downstreamGo = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Integer> committed = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Integer> failed = new ConcurrentLinkedQueue<>();
+
+        StagedPipeline<Integer> pipeline = new StagedPipeline<Integer>(executor, 1, (item, e) -> failed.add(item))
+                .asyncStage(2, 8, batch -> {
+                    List<CompletableFuture<Void>> futures = new ArrayList<>();
+                    for (Integer ignored : batch) {
+                        CompletableFuture<Void> f = new CompletableFuture<>();
+                        synchronized (pending) {
+                            pending.add(f);
+                        }
+                        futures.add(f);
+                        allStarted.countDown();
+                    }
+                    return futures;
+                })
+                .stage(1, item -> {
+                    downstreamGo.await(); // downstream stalled: its queue (capacity 1) fills up
+                    committed.add(item);
+                });
+        pipeline.start();
+
+        Thread feeder = new Thread(() -> {
+            try {
+                for (int i = 0; i < items; i++) pipeline.submit(i);
+            } catch (InterruptedException ignored) {
+            }
+        });
+        feeder.start();
+        assertTrue(allStarted.await(5, TimeUnit.SECONDS));
+
+        // One "dispatcher" thread completes every call while downstream is stalled
+        Thread dispatcher = new Thread(() -> {
+            synchronized (pending) {
+                for (int i = 0; i < pending.size(); i++) {
+                    if (i % 10 == 0) {
+                        pending.get(i).completeExceptionally(new IllegalStateException("rejected"));
+                    } else {
+                        pending.get(i).complete(null);
+                    }
+                }
+            }
+        });
+        dispatcher.start();
+        dispatcher.join(2000);
+        assertTrue(!dispatcher.isAlive(), "completing thread blocked on a full downstream queue");
+
+        downstreamGo.countDown();
+        feeder.join();
+        pipeline.finish();
+
+        assertEquals(items, committed.size());
+        assertEquals(items / 10, failed.size());
+        executor.shutdownNow();
+    }
+
+    @Test
+    void interruptedWorkerFailsFinishInsteadOfReportingDrained() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        CountDownLatch started = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Integer> committed = new ConcurrentLinkedQueue<>();
+
+        StagedPipeline<Integer> pipeline = new StagedPipeline<Integer>(executor, 4, (item, e) -> { })
+                .stage(1, item -> {
+                    started.countDown();
+                    Thread.sleep(60_000);
+                })
+                .stage(1, committed::add);
+        pipeline.start();
+
+        pipeline.submit(1);
+        pipeline.submit(2);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.shutdownNow(); // interrupts the first stage mid-item
+
+        long t0 = System.nanoTime();
+        assertThrows(InterruptedException.class, pipeline::finish);
+        assertTrue(System.nanoTime() - t0 < TimeUnit.SECONDS.toNanos(5));
+        assertTrue(committed.isEmpty());
+        assertThrows(InterruptedException.class, () -> pipeline.submit(3));
+    }
+}
@@ -0,0 +1,142 @@
+package com.sendmail.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Batched sends (messageVersions) against a mock Brevo endpoint.
+ */
+class BrevoTransportBatchTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private MockWebServer server;
+    private BrevoTransport transport;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+
+        transport = new BrevoTransport();
+        ReflectionTestUtils.setField(transport, "apiKey", "test-key");
+        ReflectionTestUtils.setField(transport, "fromEmail", "billing@example.com");
+        ReflectionTestUtils.setField(transport, "rate", 1000.0);
+        ReflectionTestUtils.setField(transport, "burst", 100);
+        ReflectionTestUtils.setField(transport, "minRate", 100.0);
+        ReflectionTestUtils.setField(transport, "increaseStep", 1.0);
+        ReflectionTestUtils.setField(transport, "decreaseFactor", 0.5);
+        ReflectionTestUtils.setField(transport, "maxThrottleRetries", 3);
+        ReflectionTestUtils.setField(transport, "brevoUrl", server.url("/v3/smtp/email").toString());
+        ReflectionTestUtils.setField(transport, "maxInFlight", 4);
+        ReflectionTestUtils.setField(transport, "maxIdleConnections", 4);
+        ReflectionTestUtils.setField(transport, "keepAliveSeconds", 30L);
+        ReflectionTestUtils.setField(transport, "http2", false);
+        transport.init();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        transport.close();
+        server.shutdown();
+    }
+
+    @Test
+    void batchGoesOutAsOneCallWithMessageVersions() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(201).setBody("{\"messageIds\":[]}"));
+
+        List<Exception> results = transport.sendBatch(List.of(
+                message("a@example.com", "Bill \"Q1\" – A-1", "Dear A\nPlease pay"),
+                message("b@example.com", "Bill \"Q1\" – B-2", "Dear B"),
+                message("c@example.com", "Bill \"Q1\" – C-3", "Dear C")
+        ), null);
+
+        assertEquals(3, results.size());
+        results.forEach(e -> assertNull(e));
+        assertEquals(1, server.getRequestCount());
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("POST", request.getMethod());
+        assertEquals("test-key", request.getHeader("api-key"));
+
+        JsonNode body = mapper.readTree(request.getBody().readUtf8());
+        assertEquals("billing@example.com", body.at("/sender/email").asText());
+        assertEquals("Bill \"Q1\" – A-1", body.get("subject").asText());
+        assertEquals("Dear A<br>Please pay", body.get("htmlContent").asText());
+        assertFalse(body.has("to"));
+        assertFalse(body.has("attachment"));
+
+        JsonNode versions = body.get("messageVersions");
+        assertEquals(3, versions.size());
+        assertEquals("b@example.com", versions.get(1).at("/to/0/email").asText());
+        assertEquals("Bill \"Q1\" – B-2", versions.get(1).get("subject").asText());
+        assertEquals("Dear B", versions.get(1).get("htmlContent").asText());
+        assertEquals("c@example.com", versions.get(2).at("/to/0/email").asText());
+    }
+
+    @Test
+    void wholeBatch400IsResolvedIntoPerRowResults() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(400)
+                .setBody("{\"code\":\"invalid_parameter\",\"message\":\"email is not valid in messageVersions\"}"));
+        server.enqueue(new MockResponse().setResponseCode(201).setBody("{}"));
+        server.enqueue(new MockResponse().setResponseCode(400)
+                .setBody("{\"code\":\"invalid_parameter\",\"message\":\"email is not valid in to\"}"));
+        server.enqueue(new MockResponse().setResponseCode(201).setBody("{}"));
+
+        List<Exception> results = transport.sendBatch(List.of(
+                message("a@example.com", "Bill", "A"),
+                message("bad@@example", "Bill", "B"),
+                message("c@example.com", "Bill", "C")
+        ), null);
+
+        assertNull(results.get(0));
+        BrevoApiException rejected = assertInstanceOf(BrevoApiException.class, results.get(1));
+        assertEquals(400, rejected.getStatusCode());
+        assertTrue(rejected.getMessage().contains("email is not valid in to"));
+        assertNull(results.get(2));
+
+        // The batch call, then one single-recipient call per row
+        assertEquals(4, server.getRequestCount());
+        assertTrue(mapper.readTree(server.takeRequest().getBody().readUtf8()).has("messageVersions"));
+        for (String to : List.of("a@example.com", "bad@@example", "c@example.com")) {
+            JsonNode single = mapper.readTree(server.takeRequest().getBody().readUtf8());
+            assertFalse(single.has("messageVersions"));
+            assertEquals(to, single.at("/to/0/email").asText());
+        }
+    }
+
+    @Test
+    void throttledBatchIsRetriedAsAWhole() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(429).setBody("{\"code\":\"too_many_requests\"}"));
+        server.enqueue(new MockResponse().setResponseCode(201).setBody("{}"));
+
+        List<Exception> results = transport.sendBatch(List.of(
+                message("a@example.com", "Bill", "A"),
+                message("b@example.com", "Bill", "B")
+        ), null);
+
+        results.forEach(e -> assertNull(e));
+        assertEquals(2, server.getRequestCount());
+        assertTrue(mapper.readTree(server.takeRequest().getBody().readUtf8()).has("messageVersions"));
+        assertTrue(mapper.readTree(server.takeRequest().getBody().readUtf8()).has("messageVersions"));
+    }
+
+    private static PersonalizedMessage message(String to, String subject, String body) {
+        return new PersonalizedMessage(to, subject, body, null);
+    }
+}
@@ -0,0 +1,127 @@
+package com.sendmail.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scripted SMTP server for transport tests.
+ *
+ * RCPT TO an address containing "bad" gets 550; one containing "busy"
+ * gets 451 while {@link #busyReplies} lasts. With {@link #dropAfter} set,
+ * a session is hung up (no reply, no 421) after that many messages, as a
+ * relay does on its idle or per-session limit.
+ */
+class FakeSmtpServer implements AutoCloseable {
+
+    final AtomicInteger connections = new AtomicInteger();
+    final AtomicInteger auths = new AtomicInteger();
+    final AtomicInteger messages = new AtomicInteger();
+    final AtomicInteger busyReplies = new AtomicInteger();
+    volatile int dropAfter;
+
+    private final ServerSocket server;
+    private final Thread acceptor;
+
+    FakeSmtpServer() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(this::acceptLoop, "FakeSmtp");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int port() {
+        return server.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket s = server.accept();
+                connections.incrementAndGet();
+                Thread t = new Thread(() -> session(s), "FakeSmtpSession");
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                return; // closed
+            }
+        }
+    }
+
+    private void session(Socket s) {
+        try (s;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+             OutputStream out = s.getOutputStream()) {
+
+            int sent = 0;
+            reply(out, "220 fake ESMTP");
+            String line;
+            while ((line = in.readLine()) != null) {
+                String cmd = line.toUpperCase();
+                if (cmd.startsWith("EHLO")) {
+                    reply(out, "250-fake\r\n250-AUTH PLAIN LOGIN\r\n250 8BITMIME");
+                } else if (cmd.startsWith("HELO")) {
+                    reply(out, "250 fake");
+                } else if (cmd.startsWith("AUTH PLAIN")) {
+                    if (cmd.trim().equals("AUTH PLAIN")) {
+                        reply(out, "334 ");
+                        in.readLine();
+                    }
+                    auths.incrementAndGet();
+                    reply(out, "235 2.7.0 ok");
+                } else if (cmd.startsWith("AUTH LOGIN")) {
+                    reply(out, "334 VXNlcm5hbWU6");
+                    in.readLine();
+                    reply(out, "334 UGFzc3dvcmQ6");
+                    in.readLine();
+                    auths.incrementAndGet();
+                    reply(out, "235 2.7.0 ok");
+                } else if (cmd.startsWith("MAIL FROM")) {
+                    reply(out, "250 2.1.0 ok");
+                } else if (cmd.startsWith("RCPT TO")) {
+                    String lower = line.toLowerCase();
+                    if (lower.contains("bad")) {
+                        reply(out, "550 5.1.1 user unknown");
+                    } else if (lower.contains("busy") && busyReplies.getAndDecrement() > 0) {
+                        reply(out, "451 4.7.1 try again later");
+                    } else {
+                        reply(out, "250 2.1.5 ok");
+                    }
+                } else if (cmd.equals("DATA")) {
+                    reply(out, "354 go ahead");
+                    while ((line = in.readLine()) != null && !line.equals(".")) {
+                        // message content
+                    }
+                    messages.incrementAndGet();
+                    reply(out, "250 2.0.0 queued");
+                    if (dropAfter > 0 && ++sent >= dropAfter) return;
+                } else if (cmd.equals("RSET") || cmd.equals("NOOP")) {
+                    reply(out, "250 ok");
+                } else if (cmd.equals("QUIT")) {
+                    reply(out, "221 bye");
+                    return;
+                } else {
+                    reply(out, "502 5.5.2 unknown command");
+                }
+            }
+        } catch (IOException e) {
+            // client went away
+        }
+    }
+
+    private static void reply(OutputStream out, String text) throws IOException {
+        out.write((text + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+}
@@ -0,0 +1,22 @@
+package com.sendmail.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SendRateLimiterTest {
+
+    @Test
+    void bucketDoesNotRefillDuringRetryAfter() throws Exception {
+        SendRateLimiter limiter = new SendRateLimiter(10, 10, 1, 0.5, 0.5);
+
+        limiter.onThrottle(500); // rate 5/s, at most 1 token, closed for 500ms
+        assertTrue(limiter.tryAcquire() > 0, "closed during Retry-After");
+
+        Thread.sleep(600);
+        // ~100ms of refill at 5/s since the block ended, on top of the 1 token left
+        int sent = 0;
+        while (limiter.tryAcquire() == 0) sent++;
+        assertTrue(sent >= 1 && sent <= 2, "resumes from the bucket the throttle left, not a full burst: " + sent);
+    }
+}
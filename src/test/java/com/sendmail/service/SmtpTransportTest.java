@@ -0,0 +1,148 @@
+package com.sendmail.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.autoconfigure.mail.MailProperties;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pooled SMTP sender against a scripted relay: connection reuse and
+ * replacement, and how 4xx/5xx replies are classified.
+ */
+class SmtpTransportTest {
+
+    private FakeSmtpServer server;
+    private SmtpTransport transport;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeSmtpServer();
+
+        MailProperties props = new MailProperties();
+        props.setHost("127.0.0.1");
+        props.setPort(server.port());
+        props.setUsername("user");
+        props.setPassword("secret");
+        props.getProperties().put("mail.smtp.auth", "true");
+        props.getProperties().put("mail.smtp.timeout", "5000");
+
+        transport = new SmtpTransport();
+        ReflectionTestUtils.setField(transport, "fromEmail", "billing@example.com");
+        ReflectionTestUtils.setField(transport, "poolSize", 1);
+        ReflectionTestUtils.setField(transport, "maxMessagesPerConnection", 500);
+        ReflectionTestUtils.setField(transport, "idleTimeoutMs", 30_000L);
+        ReflectionTestUtils.setField(transport, "rate", 1000.0);
+        ReflectionTestUtils.setField(transport, "burst", 100);
+        ReflectionTestUtils.setField(transport, "minRate", 100.0);
+        ReflectionTestUtils.setField(transport, "increaseStep", 1.0);
+        ReflectionTestUtils.setField(transport, "decreaseFactor", 0.5);
+        ReflectionTestUtils.setField(transport, "maxThrottleRetries", 2);
+        ReflectionTestUtils.setField(transport, "mailProperties",
+                new StaticListableBeanFactory(Map.of("mailProperties", props))
+                        .getBeanProvider(MailProperties.class));
+        transport.init();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        transport.close();
+        server.close();
+    }
+
+    @Test
+    void messagesShareOnePooledConnection() throws Exception {
+        for (int i = 0; i < 3; i++) transport.send(message("m" + i + "@example.com"), null);
+
+        assertEquals(3, server.messages.get());
+        assertEquals(1, server.connections.get());
+        assertEquals(1, server.auths.get());
+        assertEquals(1L, transport.stats().get("opened"));
+    }
+
+    @Test
+    void droppedConnectionIsReplaced() throws Exception {
+        server.dropAfter = 1; // relay hangs up after every message
+
+        for (int i = 0; i < 3; i++) transport.send(message("m" + i + "@example.com"), null);
+
+        assertEquals(3, server.messages.get());
+        assertEquals(3, server.connections.get());
+        assertEquals(3L, transport.stats().get("delivered"));
+    }
+
+    @Test
+    void permanentRecipientRejectionIsNotRetriedAndKeepsTheConnection() throws Exception {
+        SmtpException e = assertThrows(SmtpException.class,
+                () -> transport.send(message("bad@example.com"), null));
+
+        assertEquals(550, e.getReplyCode());
+        assertTrue(e.isRecipient());
+        assertTrue(e.getMessage().startsWith("SMTP failed (550): recipient rejected:"));
+        assertEquals(0L, transport.rateLimiter().snapshot().get("throttled"));
+
+        transport.send(message("good@example.com"), null);
+        assertEquals(1, server.connections.get());
+        assertEquals(1, server.messages.get());
+    }
+
+    @Test
+    void temporaryReplyIsRetriedThroughTheTransportsOwnLimiter() throws Exception {
+        server.busyReplies.set(1);
+
+        transport.send(message("busy@example.com"), null);
+
+        assertEquals(1, server.messages.get());
+        assertEquals(1L, transport.rateLimiter().snapshot().get("throttled"));
+    }
+
+    @Test
+    void temporaryReplyGivesUpAfterMaxRetries() {
+        server.busyReplies.set(100);
+
+        SmtpException e = assertThrows(SmtpException.class,
+                () -> transport.send(message("busy@example.com"), null));
+
+        assertEquals(451, e.getReplyCode());
+        assertTrue(e.isThrottle());
+        assertEquals(3L, transport.rateLimiter().snapshot().get("throttled"));
+    }
+
+    @Test
+    void batchReportsEachMessage() throws Exception {
+        List<Exception> results = transport.sendBatch(List.of(
+                message("a@example.com"),
+                message("bad@example.com"),
+                message("c@example.com")
+        ), null);
+
+        assertNull(results.get(0));
+        assertEquals(550, assertInstanceOf(SmtpException.class, results.get(1)).getReplyCode());
+        assertNull(results.get(2));
+        assertEquals(2, server.messages.get());
+        assertEquals(1, server.connections.get());
+    }
+
+    @Test
+    void invalidAddressIsRejectedWithoutAConnection() {
+        SmtpException e = assertThrows(SmtpException.class,
+                () -> transport.send(message("not an address"), null));
+
+        assertEquals(553, e.getReplyCode());
+        assertEquals(0, server.connections.get());
+    }
+
+    private static PersonalizedMessage message(String to) {
+        return new PersonalizedMessage(to, "Maintenance bill", "<p>Dear member</p>", null);
+    }
+}
@@ -0,0 +1,56 @@
+package com.sendmail.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SseSubscriberTest {
+
+    @Test
+    void stalledWriteIsReportedAndTheDroppedStreamStopsAfterIt() throws Exception {
+        CountDownLatch unblock = new CountDownLatch(1);
+        AtomicInteger writes = new AtomicInteger();
+        SseEmitter emitter = new SseEmitter(0L) {
+            @Override
+            public void send(Set<DataWithMediaType> items) throws IOException {
+                writes.incrementAndGet();
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+
+        SseSubscriber sub = new SseSubscriber(emitter, new JobEventBus(new ObjectMapper(), 16), 8, 0, false);
+        assertTrue(sub.offer(new JobEventBus.Frame(1, "data:1\n\n")));
+        sub.offer(new JobEventBus.Frame(2, "data:2\n\n"));
+
+        Thread dispatcher = new Thread(sub::drain);
+        dispatcher.start();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sub.stalledMillis() < 50 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertTrue(sub.stalledMillis() >= 50, "write in progress is reported as stalled");
+
+        // What the ticker does once send-timeout-ms has passed
+        sub.close();
+        unblock.countDown();
+        dispatcher.join(5000);
+
+        assertFalse(dispatcher.isAlive());
+        assertEquals(1, writes.get(), "no frame is written after the stream was dropped");
+        assertEquals(0, sub.stalledMillis());
+        assertFalse(sub.offer(new JobEventBus.Frame(3, "data:3\n\n")));
+    }
+}
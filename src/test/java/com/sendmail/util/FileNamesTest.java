@@ -0,0 +1,23 @@
+package com.sendmail.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FileNamesTest {
+
+    @Test
+    void replacesHeaderBreakingAndPathCharacters() {
+        assertEquals("bill_.pdf", FileNames.safe("bill\".pdf"));
+        assertEquals("bill__Bcc: x@y.pdf", FileNames.safe("bill\r\nBcc: x@y.pdf"));
+        assertEquals(".._.._etc_passwd", FileNames.safe("../..\\etc/passwd"));
+        assertEquals("JanToMar2026_Bill-1AbC.pdf", FileNames.safe("JanToMar2026_Bill-1AbC.pdf"));
+    }
+
+    @Test
+    void fallsBackForNamesThatAreNotFiles() {
+        assertEquals("attachment", FileNames.safe(null));
+        assertEquals("attachment", FileNames.safe("  "));
+        assertEquals("attachment", FileNames.safe(".."));
+    }
+}
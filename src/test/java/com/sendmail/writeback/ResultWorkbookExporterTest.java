@@ -0,0 +1,70 @@
+package com.sendmail.writeback;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ResultWorkbookExporterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void copiesNumbersAndDatesWithTheirFormats() throws Exception {
+        File source = dir.resolve("upload.xlsx").toFile();
+        try (Workbook wb = new XSSFWorkbook(); FileOutputStream out = new FileOutputStream(source)) {
+            Sheet sheet = wb.createSheet("Members");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Email");
+            header.createCell(1).setCellValue("Amount");
+            header.createCell(2).setCellValue("Due");
+            header.createCell(3).setCellValue("Flat");
+
+            CellStyle money = wb.createCellStyle();
+            money.setDataFormat(wb.createDataFormat().getFormat("#,##0.00"));
+            CellStyle date = wb.createCellStyle();
+            date.setDataFormat(wb.createDataFormat().getFormat("dd/mm/yyyy"));
+
+            Row row = sheet.createRow(1);
+            row.createCell(0).setCellValue("a@example.com");
+            row.createCell(1).setCellValue(2450.5);
+            row.getCell(1).setCellStyle(money);
+            row.createCell(2).setCellValue(LocalDate.of(2026, 3, 31));
+            row.getCell(2).setCellStyle(date);
+            row.createCell(3).setCellValue("00123");
+            wb.write(out);
+        }
+
+        File result = dir.resolve("result.xlsx").toFile();
+        ResultWorkbookExporter.export(source, result, rowNum -> "SENT");
+
+        try (Workbook wb = new XSSFWorkbook(new FileInputStream(result))) {
+            Row row = wb.getSheetAt(0).getRow(1);
+
+            assertEquals(CellType.NUMERIC, row.getCell(1).getCellType());
+            assertEquals(2450.5, row.getCell(1).getNumericCellValue());
+            assertEquals("#,##0.00", row.getCell(1).getCellStyle().getDataFormatString());
+
+            assertEquals(CellType.NUMERIC, row.getCell(2).getCellType());
+            assertEquals(LocalDate.of(2026, 3, 31), row.getCell(2).getLocalDateTimeCellValue().toLocalDate());
+            assertEquals("dd/mm/yyyy", row.getCell(2).getCellStyle().getDataFormatString());
+
+            assertEquals(CellType.STRING, row.getCell(3).getCellType());
+            assertEquals("00123", row.getCell(3).getStringCellValue());
+            assertEquals("SENT", row.getCell(4).getStringCellValue());
+        }
+    }
+}